@@ -0,0 +1,133 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import hr.fer.zemris.java.hw07.shell.Environment;
+import hr.fer.zemris.java.hw07.shell.commands.ShellCommand;
+
+/**
+ * An {@link Environment} for running shell commands in benchmarks. The output
+ * is discarded, only the number of written characters is counted, so the
+ * measurements do not include any terminal I/O.
+ *
+ * @author 0036502252
+ *
+ */
+class BenchmarkEnvironment implements Environment {
+	/**
+	 * The number of characters (or raw bytes) written so far.
+	 */
+	long written;
+	/**
+	 * The current directory.
+	 */
+	private Path currentDirectory;
+	/**
+	 * The shared data of the commands.
+	 */
+	private Map<String, Object> sharedData = new HashMap<>();
+
+	/**
+	 * Constructs a new {@link BenchmarkEnvironment}.
+	 *
+	 * @param currentDirectory
+	 *            the current directory
+	 */
+	BenchmarkEnvironment(Path currentDirectory) {
+		this.currentDirectory = currentDirectory;
+	}
+
+	@Override
+	public String readLine() {
+		return null;
+	}
+
+	@Override
+	public void write(String text) {
+		written += text.length();
+	}
+
+	@Override
+	public void writeln(String text) {
+		written += text.length() + 1;
+	}
+
+	@Override
+	public void write(char[] cbuf, int offset, int length) {
+		written += length;
+	}
+
+	@Override
+	public void write(ByteBuffer bytes) {
+		written += bytes.remaining();
+		bytes.position(bytes.limit());
+	}
+
+	@Override
+	public Charset getCharset() {
+		return StandardCharsets.UTF_8;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public SortedMap<String, ShellCommand> commands() {
+		return new TreeMap<>();
+	}
+
+	@Override
+	public Character getMultilineSymbol() {
+		return '|';
+	}
+
+	@Override
+	public void setMultilineSymbol(Character symbol) {
+	}
+
+	@Override
+	public Character getPromptSymbol() {
+		return '>';
+	}
+
+	@Override
+	public void setPromptSymbol(Character symbol) {
+	}
+
+	@Override
+	public Character getMorelinesSymbol() {
+		return '\\';
+	}
+
+	@Override
+	public void setMorelinesSymbol(Character symbol) {
+	}
+
+	@Override
+	public Path getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	@Override
+	public void setCurrentDirectory(Path path) {
+		currentDirectory = path;
+	}
+
+	@Override
+	public Object getSharedData(String key) {
+		return sharedData.get(key);
+	}
+
+	@Override
+	public void setSharedData(String key, Object value) {
+		sharedData.put(key, value);
+	}
+}
@@ -0,0 +1,117 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the in-memory throughput of SHA-256 and AES-CBC, as used by the
+ * crypto program, when the data is fed in buffers of varied sizes. Each
+ * operation processes {@value #DATA_SIZE} bytes.
+ *
+ * @author 0036502252
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherBenchmark {
+	/**
+	 * The number of bytes processed by a single operation.
+	 */
+	private static final int DATA_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The size of the buffer passed to a single update.
+	 */
+	@Param({ "1024", "65536", "1048576" })
+	public int bufferSize;
+
+	/**
+	 * The processed data.
+	 */
+	private byte[] data;
+	/**
+	 * Receives the output of the cipher.
+	 */
+	private byte[] output;
+	/**
+	 * The digest being measured.
+	 */
+	private MessageDigest sha;
+	/**
+	 * The cipher being measured.
+	 */
+	private Cipher cipher;
+	/**
+	 * The key of the cipher.
+	 */
+	private SecretKeySpec key;
+	/**
+	 * The initialization vector of the cipher.
+	 */
+	private IvParameterSpec iv;
+
+	/**
+	 * Generates the data and creates the digest and the cipher.
+	 *
+	 * @throws GeneralSecurityException
+	 *             if an algorithm is not supported
+	 */
+	@Setup
+	public void setup() throws GeneralSecurityException {
+		data = new byte[DATA_SIZE];
+		new Random(42).nextBytes(data);
+		output = new byte[bufferSize + 16];
+		sha = MessageDigest.getInstance("SHA-256");
+		cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		key = new SecretKeySpec(new byte[16], "AES");
+		iv = new IvParameterSpec(new byte[16]);
+	}
+
+	/**
+	 * @return the digest of the data
+	 */
+	@Benchmark
+	public byte[] digest() {
+		for (int i = 0; i < DATA_SIZE; i += bufferSize) {
+			sha.update(data, i, Math.min(bufferSize, DATA_SIZE - i));
+		}
+		return sha.digest();
+	}
+
+	/**
+	 * @return the output buffer
+	 * @throws GeneralSecurityException
+	 *             if the cipher fails
+	 */
+	@Benchmark
+	public byte[] encrypt() throws GeneralSecurityException {
+		cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+		for (int i = 0; i < DATA_SIZE; i += bufferSize) {
+			cipher.update(data, i, Math.min(bufferSize, DATA_SIZE - i), output, 0);
+		}
+		cipher.doFinal(output, 0);
+		return output;
+	}
+}
@@ -0,0 +1,162 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.hw07.crypto.ChunkedCipher;
+import hr.fer.zemris.java.hw07.crypto.FileCipher;
+import hr.fer.zemris.java.hw07.crypto.FileDigester;
+
+/**
+ * Measures digesting, encrypting and decrypting a generated file with the
+ * classes used by the crypto program.
+ *
+ * @author 0036502252
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileCryptoBenchmark {
+	/**
+	 * The size of the generated file.
+	 */
+	@Param({ "67108864" })
+	public long fileSize;
+	/**
+	 * The directory holding the files.
+	 */
+	private Path dir;
+	/**
+	 * The generated file.
+	 */
+	private Path plain;
+	/**
+	 * The file encrypted by the chunked cipher.
+	 */
+	private Path sealed;
+	/**
+	 * The output of the benchmarks.
+	 */
+	private Path output;
+	/**
+	 * The key, which is also used as the initialization vector.
+	 */
+	private byte[] key = new byte[16];
+
+	/**
+	 * Generates the files.
+	 *
+	 * @throws Exception
+	 *             if generating the files fails
+	 */
+	@Setup
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("crypto-bench");
+		plain = dir.resolve("plain.bin");
+		sealed = dir.resolve("sealed.bin");
+		output = dir.resolve("output.bin");
+		Fixtures.createFile(plain, fileSize);
+		new ChunkedCipher(key, key, 1).encrypt(plain, sealed, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Deletes the files.
+	 *
+	 * @throws IOException
+	 *             if deleting fails
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		Fixtures.delete(dir);
+	}
+
+	/**
+	 * @return the digest of the file
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	@Benchmark
+	public String digest() throws IOException {
+		return new FileDigester(1).digest(plain);
+	}
+
+	/**
+	 * @return the number of encrypted bytes
+	 * @throws Exception
+	 *             if encrypting fails
+	 */
+	@Benchmark
+	public long encryptCbc() throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(key));
+		return new FileCipher(cipher).process(plain, output);
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads of the chunked cipher
+	 * @return the number of encrypted bytes
+	 * @throws IOException
+	 *             if writing fails
+	 * @throws GeneralSecurityException
+	 *             if encrypting fails
+	 */
+	@Benchmark
+	public long encryptChunked(Parallelism parallelism) throws IOException, GeneralSecurityException {
+		return new ChunkedCipher(key, key, parallelism.threads).encrypt(plain, output, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads of the chunked cipher
+	 * @return the number of decrypted bytes
+	 * @throws IOException
+	 *             if writing fails
+	 * @throws GeneralSecurityException
+	 *             if decrypting fails
+	 */
+	@Benchmark
+	public long decryptChunked(Parallelism parallelism) throws IOException, GeneralSecurityException {
+		return new ChunkedCipher(key, key, parallelism.threads).decrypt(sealed, output);
+	}
+
+	/**
+	 * The number of threads of the chunked cipher, kept apart so only the
+	 * chunked benchmarks are run for each value.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Parallelism {
+		/**
+		 * The number of threads.
+		 */
+		@Param({ "1", "4" })
+		public int threads;
+	}
+}
@@ -0,0 +1,104 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Generates the files and directory trees the benchmarks work on, always with
+ * the same contents, and deletes them afterwards.
+ *
+ * @author 0036502252
+ *
+ */
+class Fixtures {
+	/**
+	 * Creates a file filled with pseudo-random bytes.
+	 *
+	 * @param file
+	 *            the file to be created
+	 * @param size
+	 *            the size of the file
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	static void createFile(Path file, long size) throws IOException {
+		Random random = new Random(size);
+		byte[] chunk = new byte[(int) Math.min(size, 1024 * 1024)];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long written = 0; written < size;) {
+				random.nextBytes(chunk);
+				ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, size - written));
+				while (buffer.hasRemaining()) {
+					written += channel.write(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a balanced directory tree. Every directory holds the given
+	 * number of files, and every directory above the given depth holds the
+	 * given number of subdirectories.
+	 *
+	 * @param root
+	 *            the root of the tree, which is created if needed
+	 * @param depth
+	 *            the number of levels below the root
+	 * @param directories
+	 *            the number of subdirectories of a directory
+	 * @param files
+	 *            the number of files in a directory
+	 * @param fileSize
+	 *            the size of a file
+	 * @throws IOException
+	 *             in case creating the tree goes awry
+	 */
+	static void createTree(Path root, int depth, int directories, int files, int fileSize) throws IOException {
+		Files.createDirectories(root);
+		for (int i = 0; i < files; i++) {
+			createFile(root.resolve(String.format("file%03d.txt", i)), fileSize);
+		}
+		if (depth == 0) {
+			return;
+		}
+		for (int i = 0; i < directories; i++) {
+			createTree(root.resolve(String.format("dir%02d", i)), depth - 1, directories, files, fileSize);
+		}
+	}
+
+	/**
+	 * Deletes a file or a directory tree, if it exists.
+	 *
+	 * @param path
+	 *            the path to be deleted
+	 * @throws IOException
+	 *             in case deleting goes awry
+	 */
+	static void delete(Path path) throws IOException {
+		if (path == null || !Files.exists(path)) {
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
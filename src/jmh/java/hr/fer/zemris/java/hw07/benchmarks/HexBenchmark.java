@@ -0,0 +1,101 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.hw07.crypto.Util;
+
+/**
+ * Measures the hex conversions of {@link Util}.
+ *
+ * @author 0036502252
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexBenchmark {
+	/**
+	 * The number of converted bytes.
+	 */
+	@Param({ "32", "4096", "65536" })
+	public int size;
+
+	/**
+	 * The bytes to be encoded.
+	 */
+	private byte[] bytes;
+	/**
+	 * The text to be decoded.
+	 */
+	private String hex;
+	/**
+	 * The preallocated array receiving the digits.
+	 */
+	private char[] chars;
+	/**
+	 * The preallocated array receiving the bytes.
+	 */
+	private byte[] decoded;
+
+	/**
+	 * Generates the data.
+	 */
+	@Setup
+	public void setup() {
+		bytes = new byte[size];
+		new Random(42).nextBytes(bytes);
+		hex = Util.byteToHex(bytes);
+		chars = new char[size * 2];
+		decoded = new byte[size];
+	}
+
+	/**
+	 * @return the encoded string
+	 */
+	@Benchmark
+	public String byteToHex() {
+		return Util.byteToHex(bytes);
+	}
+
+	/**
+	 * @return the decoded bytes
+	 */
+	@Benchmark
+	public byte[] hexToByte() {
+		return Util.hexToByte(hex);
+	}
+
+	/**
+	 * @return the array receiving the digits
+	 */
+	@Benchmark
+	public char[] encodeIntoArray() {
+		Util.encode(bytes, 0, size, chars, 0);
+		return chars;
+	}
+
+	/**
+	 * @return the array receiving the bytes
+	 */
+	@Benchmark
+	public byte[] decodeIntoArray() {
+		Util.decode(hex, 0, hex.length(), decoded, 0);
+		return decoded;
+	}
+}
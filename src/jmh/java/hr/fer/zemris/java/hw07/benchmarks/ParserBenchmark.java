@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
+import hr.fer.zemris.java.hw07.shell.commands.MassRenameShellCommand.BuilderInfoImpl;
+import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilder;
+import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilderParser;
+
+/**
+ * Measures parsing of shell command arguments and of the name expressions
+ * of the <code>massrename</code> command, and building new names.
+ *
+ * @author 0036502252
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	/**
+	 * Typical arguments of a shell command.
+	 */
+	private static final String ARGUMENTS = "\"C:/Program Files/Program1/info.txt\" -j 4 target/dir --stats";
+	/**
+	 * A typical name expression.
+	 */
+	private static final String EXPRESSION = "gradovi-${2}-${1,03}.jpg";
+	/**
+	 * The pattern selecting the renamed files.
+	 */
+	private static final Pattern PATTERN = Pattern.compile("slika(\\d+)-([^.]+)\\.jpg",
+			Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * The names of the renamed files.
+	 */
+	private String[] names;
+	/**
+	 * The parsed name expression.
+	 */
+	private NameBuilder builder;
+	/**
+	 * The matcher of the old names.
+	 */
+	private Matcher matcher = PATTERN.matcher("");
+	/**
+	 * The information passed to the name builder, reused for all of the
+	 * names. The expression uses no file data, so the directory is never read.
+	 */
+	private BuilderInfoImpl info = new BuilderInfoImpl(Paths.get(""));
+
+	/**
+	 * Generates the names and parses the expression.
+	 */
+	@Setup
+	public void setup() {
+		names = new String[100];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "slika" + i + "-" + (i % 2 == 0 ? "zagreb" : "split") + ".jpg";
+		}
+		builder = new NameBuilderParser(EXPRESSION).getNameBuilder();
+	}
+
+	/**
+	 * @return the parsed arguments
+	 */
+	@Benchmark
+	public String[] parsePath() {
+		return new ShellCommandParser(ARGUMENTS).parsePath();
+	}
+
+	/**
+	 * @return the parsed expression
+	 */
+	@Benchmark
+	public NameBuilder parseExpression() {
+		return new NameBuilderParser(EXPRESSION).getNameBuilder();
+	}
+
+	/**
+	 * Builds the new names of all of the files.
+	 *
+	 * @return the total length of the new names
+	 */
+	@Benchmark
+	public int buildNames() {
+		int length = 0;
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			matcher.reset(name).matches();
+			builder.execute(info.reset(name, matcher, i));
+			length += info.getStringBuilder().toString().length();
+		}
+		return length;
+	}
+}
@@ -0,0 +1,126 @@
+package hr.fer.zemris.java.hw07.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.hw07.shell.commands.LsShellCommand;
+import hr.fer.zemris.java.hw07.shell.commands.TreeShellCommand;
+
+/**
+ * Measures the shell commands which walk directories on a generated fixture
+ * tree. The output of the commands is discarded.
+ *
+ * @author 0036502252
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalkBenchmark {
+	/**
+	 * The number of levels of the tree below its root.
+	 */
+	@Param({ "3" })
+	public int depth;
+	/**
+	 * The number of subdirectories of a directory.
+	 */
+	@Param({ "8" })
+	public int fanout;
+	/**
+	 * The number of files in a directory.
+	 */
+	@Param({ "20" })
+	public int files;
+
+	/**
+	 * The root of the tree.
+	 */
+	private Path root;
+	/**
+	 * The environment running the commands.
+	 */
+	private BenchmarkEnvironment env;
+	/**
+	 * The ls command.
+	 */
+	private LsShellCommand ls = new LsShellCommand();
+
+	/**
+	 * Generates the tree.
+	 *
+	 * @throws IOException
+	 *             if generating the tree fails
+	 */
+	@Setup
+	public void setup() throws IOException {
+		root = Files.createTempDirectory("walk-bench");
+		Fixtures.createTree(root, depth, fanout, files, 128);
+		env = new BenchmarkEnvironment(root);
+	}
+
+	/**
+	 * Deletes the tree.
+	 *
+	 * @throws IOException
+	 *             if deleting the tree fails
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		Fixtures.delete(root);
+	}
+
+	/**
+	 * @return the number of written characters
+	 */
+	@Benchmark
+	public long tree() {
+		TreeShellCommand.generateTree(root, Long.MAX_VALUE, false, env);
+		return env.written;
+	}
+
+	/**
+	 * @return the number of written characters
+	 */
+	@Benchmark
+	public long treeSummary() {
+		TreeShellCommand.summarize(root, 10, Runtime.getRuntime().availableProcessors(), env);
+		return env.written;
+	}
+
+	/**
+	 * @return the number of written characters
+	 */
+	@Benchmark
+	public long ls() {
+		ls.executeCommand(env, root.toString());
+		return env.written;
+	}
+
+	/**
+	 * @return the number of written characters
+	 */
+	@Benchmark
+	public long lsSorted() {
+		ls.executeCommand(env, root.toString() + " --sort size");
+		return env.written;
+	}
+}
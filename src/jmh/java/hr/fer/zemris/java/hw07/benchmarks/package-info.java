@@ -0,0 +1,9 @@
+/**
+ * JMH benchmarks of the hot paths of the crypto program and the shell. Built
+ * only with the <code>benchmarks</code> Maven profile.
+ */
+/**
+ * @author 0036502252
+ *
+ */
+package hr.fer.zemris.java.hw07.benchmarks;
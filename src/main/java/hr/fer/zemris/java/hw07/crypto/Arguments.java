@@ -0,0 +1,149 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Separates the options of the {@link Crypto} program (arguments starting with
+ * a <code>-</code>) from its positional arguments. Options listed as
+ * <i>valued</i> consume the argument which follows them, options listed as
+ * flags are simple switches and any other option is rejected. An argument
+ * <code>--</code> ends the options, so the following arguments are positional
+ * even if they start with a <code>-</code>.
+ * 
+ * @author 0036502252
+ *
+ */
+class Arguments {
+	/**
+	 * The argument after which all of the arguments are positional.
+	 */
+	private static final String END_OF_OPTIONS = "--";
+
+	/**
+	 * The flags present in the arguments.
+	 */
+	private Set<String> flags = new HashSet<>();
+	/**
+	 * The values of the valued options, mapped by the option name.
+	 */
+	private Map<String, String> values = new HashMap<>();
+	/**
+	 * The remaining, positional arguments.
+	 */
+	private List<String> positional = new ArrayList<>();
+
+	/**
+	 * Constructs new {@link Arguments} by splitting the given command line
+	 * arguments of a program which has no flags.
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 * @param valuedOptions
+	 *            the names of the options which expect a value
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown, or a valued option is not followed
+	 *             by its value
+	 */
+	Arguments(List<String> args, String... valuedOptions) {
+		this(args, new String[0], valuedOptions);
+	}
+
+	/**
+	 * Constructs new {@link Arguments} by splitting the given command line
+	 * arguments.
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 * @param flagOptions
+	 *            the names of the options which are simple flags
+	 * @param valuedOptions
+	 *            the names of the options which expect a value
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown, or a valued option is not followed
+	 *             by its value
+	 */
+	Arguments(List<String> args, String[] flagOptions, String... valuedOptions) {
+		Set<String> valued = new HashSet<>(Arrays.asList(valuedOptions));
+		Set<String> known = new HashSet<>(Arrays.asList(flagOptions));
+
+		boolean optionsEnded = false;
+		for (int i = 0; i < args.size(); i++) {
+			String arg = args.get(i);
+			if (optionsEnded || arg.length() < 2 || arg.charAt(0) != '-') {
+				positional.add(arg);
+			} else if (arg.equals(END_OF_OPTIONS)) {
+				optionsEnded = true;
+			} else if (valued.contains(arg)) {
+				if (i + 1 >= args.size()) {
+					throw new IllegalArgumentException("Option " + arg + " expects a value.");
+				}
+				values.put(arg, args.get(++i));
+			} else if (known.contains(arg)) {
+				flags.add(arg);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+	}
+
+	/**
+	 * @param flag
+	 *            the name of the flag
+	 * @return true if the flag was given
+	 */
+	boolean hasFlag(String flag) {
+		return flags.contains(flag);
+	}
+
+	/**
+	 * @param option
+	 *            the name of the valued option
+	 * @param defaultValue
+	 *            returned if the option was not given
+	 * @return the value of the option
+	 */
+	String get(String option, String defaultValue) {
+		String value = values.get(option);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Gets the value of an option which expects a positive integer.
+	 * 
+	 * @param option
+	 *            the name of the valued option
+	 * @param defaultValue
+	 *            returned if the option was not given
+	 * @return the value of the option
+	 * @throws IllegalArgumentException
+	 *             if the value is not a positive integer
+	 */
+	int getPositiveInt(String option, int defaultValue) {
+		String value = values.get(option);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			int result = Integer.parseInt(value);
+			if (result > 0) {
+				return result;
+			}
+		} catch (NumberFormatException ignorable) {
+		}
+		throw new IllegalArgumentException("Option " + option + " expects a positive integer, was: " + value);
+	}
+
+	/**
+	 * @return the positional arguments, in their original order
+	 */
+	List<String> getPositional() {
+		return positional;
+	}
+}
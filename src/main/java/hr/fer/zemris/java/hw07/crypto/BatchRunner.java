@@ -0,0 +1,286 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the jobs of a batch job file concurrently on a fixed number of threads.
+ * Each line of a job file holds a single operation followed by its arguments,
+ * separated by whitespace, exactly as they would be given to {@link Crypto}:
+ * <p>
+ * <code>encrypt INPUT OUTPUT [options]</code><br>
+ * <code>decrypt INPUT OUTPUT [options]</code><br>
+ * <code>checksha FILE DIGEST</code>
+ * <p>
+ * Empty lines and lines starting with <code>#</code> are ignored. A job whose
+ * input file is the output of an earlier job waits for that job to finish,
+ * and fails if it failed; all other jobs are independent. Nothing is
+ * ever read from the standard input: the keys and the initialization vectors
+ * missing from a job's line are taken from the batch's defaults.
+ *
+ * @author 0036502252
+ *
+ */
+class BatchRunner {
+	/**
+	 * The number of threads running the jobs.
+	 */
+	private int threads;
+	/**
+	 * The default keys and initialization vectors.
+	 */
+	private KeySource keys;
+
+	/**
+	 * Constructs a new {@link BatchRunner}.
+	 *
+	 * @param threads
+	 *            the number of threads running the jobs
+	 * @param keys
+	 *            the default keys and initialization vectors
+	 */
+	BatchRunner(int threads, KeySource keys) {
+		this.threads = threads;
+		this.keys = keys;
+	}
+
+	/**
+	 * Reads the jobs from a job file.
+	 *
+	 * @param file
+	 *            the job file
+	 * @return the jobs, each one given as the operation followed by its
+	 *         arguments
+	 * @throws IOException
+	 *             in case reading goes awry
+	 */
+	static List<List<String>> readJobs(Path file) throws IOException {
+		List<List<String>> jobs = new ArrayList<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				jobs.add(Arrays.asList(line.split("\\s+")));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Runs the jobs and waits for all of them to finish.
+	 *
+	 * @param jobs
+	 *            the jobs, as returned by {@link #readJobs(Path)}
+	 * @return the results of the jobs, in the order of the jobs
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	List<Result> run(List<List<String>> jobs) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+		try {
+			List<Future<Result>> futures = new ArrayList<>(jobs.size());
+			Map<Path, Future<Result>> producers = new HashMap<>();
+			for (int i = 0; i < jobs.size(); i++) {
+				int number = i + 1;
+				List<String> job = jobs.get(i);
+				List<Path> files = files(job);
+
+				// the pool runs the jobs in order, so the producer has always
+				// been started before the job waiting for it
+				Future<Result> producer = files.isEmpty() ? null : producers.get(files.get(0));
+				futures.add(pool.submit(() -> {
+					if (producer != null && !producer.get().success) {
+						return new Result(number, job.get(0), false, 0, 0,
+								"Job " + producer.get().number + " producing the input failed.");
+					}
+					return execute(number, job);
+				}));
+
+				if (files.size() == 2 && job.get(0).endsWith("crypt")) {
+					producers.put(files.get(1), futures.get(i));
+				}
+			}
+
+			List<Result> results = new ArrayList<>(jobs.size());
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gets the files of a job without executing it.
+	 *
+	 * @param job
+	 *            the operation followed by its arguments
+	 * @return the paths given as the positional arguments of the job, or an
+	 *         empty list if the arguments are invalid
+	 */
+	private static List<Path> files(List<String> job) {
+		String[] options = job.get(0).equals("checksha") ? new String[] { Crypto.DIGEST_OPTION } : Crypto.CRYPT_OPTIONS;
+		try {
+			List<Path> files = new ArrayList<>();
+			for (String arg : new Arguments(job.subList(1, job.size()), options).getPositional()) {
+				files.add(Paths.get(arg));
+			}
+			return files;
+		} catch (IllegalArgumentException ex) {
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Executes a single job. Never throws; a failure is reported in the result.
+	 *
+	 * @param number
+	 *            the number of the job, starting from 1
+	 * @param job
+	 *            the operation followed by its arguments
+	 * @return the result of the job
+	 */
+	private Result execute(int number, List<String> job) {
+		String operation = job.get(0);
+		List<String> args = job.subList(1, job.size());
+		long start = System.nanoTime();
+
+		try {
+			switch (operation) {
+			case "encrypt":
+			case "decrypt":
+				Arguments cryptArguments = new Arguments(args, Crypto.CRYPT_OPTIONS);
+				long bytes = Crypto.crypt(cryptArguments, KeySource.fromArguments(cryptArguments, keys),
+						operation.equals("encrypt"), 1);
+				List<String> paths = cryptArguments.getPositional();
+				return new Result(number, operation, true, bytes, System.nanoTime() - start,
+						paths.get(0) + " -> " + paths.get(1));
+
+			case "checksha":
+				Arguments checkArguments = new Arguments(args, Crypto.DIGEST_OPTION);
+				List<String> positional = checkArguments.getPositional();
+				String digest = checkArguments.get(Crypto.DIGEST_OPTION, positional.size() == 2 ? positional.get(1)
+						: null);
+				if (positional.isEmpty() || positional.size() > 2 || digest == null) {
+					throw new IllegalArgumentException("Expected a file and its digest.");
+				}
+
+				Path file = Paths.get(positional.get(0));
+				boolean matches = Crypto.digestMatches(file, digest);
+				return new Result(number, operation, matches, Files.size(file), System.nanoTime() - start,
+						matches ? file.toString() : file + ": digest mismatch");
+
+			default:
+				throw new IllegalArgumentException("Unknown operation: " + operation);
+			}
+		} catch (Exception ex) {
+			String message = ex instanceof NoSuchFileException ? "No such file: " + ex.getMessage()
+					: ex.getMessage() == null ? ex.toString() : ex.getMessage();
+			return new Result(number, operation, false, 0, System.nanoTime() - start, message);
+		}
+	}
+
+	/**
+	 * Prints a table of the results of the jobs, followed by a summary line.
+	 *
+	 * @param results
+	 *            the results of the jobs
+	 * @param out
+	 *            the stream the table is printed to
+	 * @param elapsed
+	 *            the time taken by the whole batch, in seconds
+	 */
+	static void printSummary(List<Result> results, PrintStream out, double elapsed) {
+		String format = "%4s  %-10s  %-6s  %14s  %9s  %s%n";
+		out.printf(format, "#", "JOB", "STATUS", "BYTES", "TIME", "DETAILS");
+
+		int failed = 0;
+		for (Result result : results) {
+			out.printf(format, result.number, result.operation, result.success ? "OK" : "FAILED", result.bytes,
+					String.format("%.3f s", result.nanos / 1e9), result.details);
+			if (!result.success) {
+				failed++;
+			}
+		}
+
+		out.println(String.format("Completed %d jobs in %.3f s: %d succeeded, %d failed.", results.size(), elapsed,
+				results.size() - failed, failed));
+	}
+
+	/**
+	 * The result of a single job.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class Result {
+		/**
+		 * The number of the job, starting from 1.
+		 */
+		final int number;
+		/**
+		 * The operation of the job.
+		 */
+		final String operation;
+		/**
+		 * True if the job succeeded.
+		 */
+		final boolean success;
+		/**
+		 * The number of bytes processed by the job.
+		 */
+		final long bytes;
+		/**
+		 * The time taken by the job, in nanoseconds.
+		 */
+		final long nanos;
+		/**
+		 * The files of the job, or the reason of its failure.
+		 */
+		final String details;
+
+		/**
+		 * Constructs a new {@link Result}.
+		 *
+		 * @param number
+		 *            the number of the job
+		 * @param operation
+		 *            the operation of the job
+		 * @param success
+		 *            true if the job succeeded
+		 * @param bytes
+		 *            the number of bytes processed by the job
+		 * @param nanos
+		 *            the time taken by the job, in nanoseconds
+		 * @param details
+		 *            the files of the job, or the reason of its failure
+		 */
+		Result(int number, String operation, boolean success, long bytes, long nanos, String details) {
+			this.number = number;
+			this.operation = operation;
+			this.success = success;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.details = details;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent list of files together with their sizes, modification times and
+ * SHA-256 digests. The size and modification time allow a later verification
+ * to skip the files which were obviously not changed.
+ * <p>
+ * The manifest is stored as a text file starting with the line
+ * {@value #HEADER}, followed by a line per file: the hex-encoded digest, the
+ * size in bytes, the modification time in nanoseconds since the epoch and the
+ * path, separated by single spaces.
+ * 
+ * @author 0036502252
+ *
+ */
+public class ChecksumManifest {
+	/**
+	 * The first line of a manifest file.
+	 */
+	public static final String HEADER = "# sha256 manifest v1";
+
+	/**
+	 * The entries of the manifest, mapped by their paths.
+	 */
+	private Map<Path, Entry> entries = new LinkedHashMap<>();
+
+	/**
+	 * Reads a manifest from a file.
+	 * 
+	 * @param file
+	 *            the manifest file
+	 * @return the manifest
+	 * @throws IOException
+	 *             if the file can not be read or is not a valid manifest
+	 */
+	public static ChecksumManifest read(Path file) throws IOException {
+		ChecksumManifest manifest = new ChecksumManifest();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				throw new IOException("Not a manifest file: " + file);
+			}
+
+			String line;
+			for (int number = 2; (line = reader.readLine()) != null; number++) {
+				String[] parts = line.split(" ", 4);
+				if (parts.length != 4) {
+					throw new IOException("Invalid manifest line " + number + ": " + line);
+				}
+				try {
+					manifest.put(new Entry(Paths.get(parts[3]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+							parts[0]));
+				} catch (RuntimeException e) {
+					throw new IOException("Invalid manifest line " + number + ": " + line, e);
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest to a file. The manifest is first written to a
+	 * temporary file, which then replaces the target, so an interrupted write
+	 * does not destroy the previous manifest.
+	 * 
+	 * @param file
+	 *            the manifest file
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	public void write(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.write('\n');
+			for (Entry entry : entries.values()) {
+				writer.write(entry.digest + " " + entry.size + " " + entry.modified + " " + entry.path);
+				writer.write('\n');
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param path
+	 *            the path of a file
+	 * @return the entry of the file, or null if the file is not in the manifest
+	 */
+	public Entry get(Path path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * Adds an entry to the manifest, replacing the previous entry of the same
+	 * file.
+	 * 
+	 * @param entry
+	 *            the entry to be added
+	 */
+	public void put(Entry entry) {
+		entries.put(entry.path, entry);
+	}
+
+	/**
+	 * @return the entries of the manifest, in the order they were added
+	 */
+	public Collection<Entry> entries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * A file listed in a {@link ChecksumManifest}.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	public static class Entry {
+		/**
+		 * The path of the file.
+		 */
+		public final Path path;
+		/**
+		 * The size of the file in bytes.
+		 */
+		public final long size;
+		/**
+		 * The modification time of the file, in nanoseconds since the epoch.
+		 */
+		public final long modified;
+		/**
+		 * The hex-encoded SHA-256 digest of the file.
+		 */
+		public final String digest;
+
+		/**
+		 * Constructs a new {@link Entry}.
+		 * 
+		 * @param path
+		 *            the path of the file
+		 * @param size
+		 *            the size of the file in bytes
+		 * @param modified
+		 *            the modification time in nanoseconds since the epoch
+		 * @param digest
+		 *            the hex-encoded digest of the file
+		 */
+		public Entry(Path path, long size, long modified, String digest) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.digest = digest;
+		}
+
+		/**
+		 * Constructs a new {@link Entry} using the attributes of the file.
+		 * 
+		 * @param path
+		 *            the path of the file
+		 * @param attributes
+		 *            the attributes of the file
+		 * @param digest
+		 *            the hex-encoded digest of the file
+		 */
+		public Entry(Path path, BasicFileAttributes attributes, String digest) {
+			this(path, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), digest);
+		}
+
+		/**
+		 * Checks if the file's size and modification time still match this
+		 * entry.
+		 * 
+		 * @param attributes
+		 *            the current attributes of the file
+		 * @return true if the file seems unchanged
+		 */
+		public boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && modified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		}
+	}
+}
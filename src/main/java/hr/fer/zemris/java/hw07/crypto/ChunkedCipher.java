@@ -0,0 +1,593 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts and decrypts files in a chunked AES-GCM container format. The file
+ * is split into chunks which are encrypted and authenticated independently,
+ * so all of the chunks can be processed in parallel, and any byte range of the
+ * original file can be decrypted without touching the rest of the container.
+ * <p>
+ * The container starts with a header of {@value #HEADER_SIZE} bytes: the magic
+ * number, the format version, the chunk size, the length of the original file
+ * and a random 12-byte salt. The header is followed by the encrypted chunks,
+ * each followed by its {@value #TAG_SIZE}-byte authentication tag. Every chunk
+ * except the last one holds exactly one chunk size of the original file.
+ * <p>
+ * The nonce of a chunk is the first 12 bytes of the initialization vector,
+ * XOR-ed with the salt, with the index of the chunk XOR-ed into the last 8
+ * bytes. The header, the index of the chunk and a flag marking the last chunk
+ * are authenticated along with each chunk, so chunks can be neither modified,
+ * reordered nor dropped without the decryption failing.
+ * <p>
+ * The chunks are passed to the cipher as arrays, since the cipher's
+ * {@link ByteBuffer} methods copy the data once more.
+ *
+ * @author 0036502252
+ *
+ */
+public class ChunkedCipher {
+	/**
+	 * The default size of a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	/**
+	 * The largest allowed size of a chunk.
+	 */
+	public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+	/**
+	 * The size of the container's header.
+	 */
+	public static final int HEADER_SIZE = 32;
+	/**
+	 * The size of a chunk's authentication tag.
+	 */
+	public static final int TAG_SIZE = 16;
+	/**
+	 * The magic number at the start of the container ("HWCC").
+	 */
+	private static final int MAGIC = 0x48574343;
+	/**
+	 * The version of the container format.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * The size of a nonce and of the salt.
+	 */
+	private static final int NONCE_SIZE = 12;
+	/**
+	 * The name of the cipher transformation.
+	 */
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	/**
+	 * The encryption key.
+	 */
+	private SecretKeySpec key;
+	/**
+	 * The initialization vector, of which the first 12 bytes are used.
+	 */
+	private byte[] iv;
+	/**
+	 * The number of threads processing the chunks.
+	 */
+	private int threads;
+
+	/**
+	 * Constructs a new {@link ChunkedCipher}.
+	 *
+	 * @param key
+	 *            the AES key
+	 * @param iv
+	 *            the initialization vector, at least 12 bytes long
+	 * @param threads
+	 *            the number of threads processing the chunks
+	 */
+	public ChunkedCipher(byte[] key, byte[] iv, int threads) {
+		if (iv.length < NONCE_SIZE) {
+			throw new IllegalArgumentException("The initialization vector must have at least " + NONCE_SIZE + " bytes!");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed!");
+		}
+		this.key = new SecretKeySpec(key, "AES");
+		this.iv = iv.clone();
+		this.threads = threads;
+	}
+
+	/**
+	 * Encrypts a file into a container.
+	 *
+	 * @param input
+	 *            the file to be encrypted
+	 * @param output
+	 *            the resulting container
+	 * @param chunkSize
+	 *            the size of a chunk
+	 * @return the number of encrypted bytes
+	 * @throws IOException
+	 *             in case reading or writing goes awry
+	 * @throws GeneralSecurityException
+	 *             if the cipher fails
+	 */
+	public long encrypt(Path input, Path output, int chunkSize) throws IOException, GeneralSecurityException {
+		if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException("The chunk size must be between 1 and " + MAX_CHUNK_SIZE + "!");
+		}
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			byte[] salt = new byte[NONCE_SIZE];
+			new SecureRandom().nextBytes(salt);
+			Header header = new Header(chunkSize, in.size(), salt);
+
+			ByteBuffer bytes = ByteBuffer.wrap(header.toBytes());
+			while (bytes.hasRemaining()) {
+				out.write(bytes, bytes.position());
+			}
+
+			processChunks(header, 0, header.chunks() - 1, (worker, index) -> {
+				ByteBuffer plain = worker.plain(header.plainSize(index));
+				readFully(in, plain, header.plainOffset(index));
+				plain.flip();
+
+				worker.init(Cipher.ENCRYPT_MODE, header, index);
+				ByteBuffer sealed = worker.sealed();
+				sealed.limit(worker.cipher.doFinal(plain.array(), 0, plain.limit(), sealed.array(), 0));
+				writeFully(out, sealed, header.sealedOffset(index));
+			});
+			return header.length;
+		}
+	}
+
+	/**
+	 * Decrypts a whole container.
+	 *
+	 * @param input
+	 *            the container
+	 * @param output
+	 *            the resulting file
+	 * @return the number of decrypted bytes
+	 * @throws IOException
+	 *             in case reading or writing goes awry, or the container is
+	 *             malformed
+	 * @throws GeneralSecurityException
+	 *             if a chunk fails the authentication
+	 */
+	public long decrypt(Path input, Path output) throws IOException, GeneralSecurityException {
+		return decrypt(input, output, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Decrypts a byte range of the original file. Only the chunks overlapping
+	 * the range are read and decrypted, along with the last chunk of the
+	 * container, which is authenticated even if the range is empty. A range
+	 * reaching past the end of the original file is shortened.
+	 *
+	 * @param input
+	 *            the container
+	 * @param output
+	 *            the file receiving the decrypted range
+	 * @param offset
+	 *            the offset of the range in the original file
+	 * @param length
+	 *            the length of the range
+	 * @return the number of decrypted bytes
+	 * @throws IOException
+	 *             in case reading or writing goes awry, or the container is
+	 *             malformed
+	 * @throws GeneralSecurityException
+	 *             if a chunk fails the authentication
+	 */
+	public long decrypt(Path input, Path output, long offset, long length)
+			throws IOException, GeneralSecurityException {
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("The range must not be negative!");
+		}
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			Header header = Header.read(in);
+			if (offset > header.length) {
+				throw new IllegalArgumentException("The range starts after the end of the file (" + header.length
+						+ " bytes)!");
+			}
+
+			long end = offset + Math.min(length, header.length - offset);
+			int finalChunk = header.chunks() - 1;
+			int first;
+			int last;
+			if (end == offset) {
+				// nothing is written, but the final chunk is still authenticated
+				first = finalChunk;
+				last = finalChunk - 1;
+			} else {
+				first = (int) (offset / header.chunkSize);
+				last = (int) ((end - 1) / header.chunkSize);
+			}
+
+			// the final chunk is always authenticated, since it is the only one
+			// confirming that the container has not been truncated
+			int processed = last < finalChunk ? last + 1 : last;
+			processChunks(header, first, processed, (worker, i) -> {
+				int index = i > last ? finalChunk : i;
+				int plainSize = header.plainSize(index);
+				ByteBuffer sealed = worker.sealed();
+				sealed.limit(plainSize + TAG_SIZE);
+				readFully(in, sealed, header.sealedOffset(index));
+				sealed.flip();
+
+				worker.init(Cipher.DECRYPT_MODE, header, index);
+				ByteBuffer plain = worker.plain(plainSize);
+				try {
+					worker.cipher.doFinal(sealed.array(), 0, sealed.limit(), plain.array(), 0);
+				} catch (AEADBadTagException ex) {
+					throw new AEADBadTagException("Chunk " + index + " failed the authentication!");
+				}
+				if (i > last) {
+					return;
+				}
+
+				long start = header.plainOffset(index);
+				long from = Math.max(offset, start);
+				long to = Math.min(end, start + plainSize);
+				plain.limit((int) (to - start));
+				plain.position((int) (from - start));
+				writeFully(out, plain, from - offset);
+			});
+			return end - offset;
+		}
+	}
+
+	/**
+	 * Processes the chunks in the given range of indices in parallel. Each
+	 * thread uses its own {@link Worker}. If processing any of the chunks
+	 * fails, the remaining chunks are abandoned.
+	 *
+	 * @param header
+	 *            the header of the container
+	 * @param first
+	 *            the index of the first processed chunk
+	 * @param last
+	 *            the index of the last processed chunk
+	 * @param action
+	 *            processes a single chunk
+	 * @throws IOException
+	 *             if processing a chunk throws it
+	 * @throws GeneralSecurityException
+	 *             if processing a chunk throws it
+	 */
+	private void processChunks(Header header, int first, int last, ChunkAction action)
+			throws IOException, GeneralSecurityException {
+		ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(header.chunkSize));
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, last - first + 1));
+		try {
+			List<Future<Void>> results = new ArrayList<>(last - first + 1);
+			for (int i = first; i <= last; i++) {
+				int index = i;
+				results.add(pool.submit(() -> {
+					action.process(workers.get(), index);
+					return null;
+				}));
+			}
+
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing the chunks!", ex);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads from the given position until the buffer is full.
+	 *
+	 * @param channel
+	 *            the channel being read
+	 * @param buffer
+	 *            the buffer being filled
+	 * @param position
+	 *            the position in the channel
+	 * @throws IOException
+	 *             in case reading goes awry, or the channel ends too early
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position() - start) == -1) {
+				throw new EOFException("The container is truncated!");
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining contents of the buffer at the given position.
+	 *
+	 * @param channel
+	 *            the channel being written
+	 * @param buffer
+	 *            the buffer being written
+	 * @param position
+	 *            the position in the channel
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position() - start);
+		}
+	}
+
+	/**
+	 * Processes a single chunk.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	private interface ChunkAction {
+		/**
+		 * Processes the chunk with the given index.
+		 *
+		 * @param worker
+		 *            the worker of the current thread
+		 * @param index
+		 *            the index of the chunk
+		 * @throws IOException
+		 *             in case reading or writing goes awry
+		 * @throws GeneralSecurityException
+		 *             if the cipher fails
+		 */
+		void process(Worker worker, int index) throws IOException, GeneralSecurityException;
+	}
+
+	/**
+	 * The cipher and the buffers used by a single thread. The buffers are
+	 * reused for all of the chunks the thread processes.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	private class Worker {
+		/**
+		 * The cipher of this thread.
+		 */
+		private Cipher cipher;
+		/**
+		 * Holds the plaintext of a chunk.
+		 */
+		private ByteBuffer plain;
+		/**
+		 * Holds the ciphertext of a chunk, followed by its tag.
+		 */
+		private ByteBuffer sealed;
+		/**
+		 * Holds the nonce of a chunk.
+		 */
+		private byte[] nonce = new byte[NONCE_SIZE];
+		/**
+		 * Holds the additional authenticated data of a chunk.
+		 */
+		private ByteBuffer aad = ByteBuffer.allocate(HEADER_SIZE + Long.BYTES + 1);
+
+		/**
+		 * Constructs a new {@link Worker}.
+		 *
+		 * @param chunkSize
+		 *            the size of a chunk
+		 */
+		Worker(int chunkSize) {
+			try {
+				cipher = Cipher.getInstance(TRANSFORMATION);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(TRANSFORMATION + " is not supported!", e);
+			}
+			plain = ByteBuffer.allocate(chunkSize);
+			sealed = ByteBuffer.allocate(chunkSize + TAG_SIZE);
+		}
+
+		/**
+		 * @param size
+		 *            the size of the chunk's plaintext
+		 * @return the cleared plaintext buffer, limited to the given size
+		 */
+		ByteBuffer plain(int size) {
+			plain.clear().limit(size);
+			return plain;
+		}
+
+		/**
+		 * @return the cleared ciphertext buffer
+		 */
+		ByteBuffer sealed() {
+			sealed.clear();
+			return sealed;
+		}
+
+		/**
+		 * Initializes the cipher for a chunk and feeds it the chunk's
+		 * additional authenticated data.
+		 *
+		 * @param mode
+		 *            the cipher mode
+		 * @param header
+		 *            the header of the container
+		 * @param index
+		 *            the index of the chunk
+		 * @throws GeneralSecurityException
+		 *             if the key is invalid
+		 */
+		void init(int mode, Header header, int index) throws GeneralSecurityException {
+			for (int i = 0; i < NONCE_SIZE; i++) {
+				nonce[i] = (byte) (iv[i] ^ header.salt[i]);
+			}
+			for (int i = 0; i < Long.BYTES; i++) {
+				nonce[NONCE_SIZE - 1 - i] ^= (byte) ((long) index >>> (8 * i));
+			}
+			cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+
+			aad.clear();
+			aad.put(header.bytes).putLong(index).put((byte) (index == header.chunks() - 1 ? 1 : 0));
+			cipher.updateAAD(aad.array(), 0, aad.position());
+		}
+	}
+
+	/**
+	 * The header of a container.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	private static class Header {
+		/**
+		 * The size of a chunk.
+		 */
+		private final int chunkSize;
+		/**
+		 * The length of the original file.
+		 */
+		private final long length;
+		/**
+		 * The salt of the nonces.
+		 */
+		private final byte[] salt;
+		/**
+		 * The encoded header.
+		 */
+		private final byte[] bytes;
+
+		/**
+		 * Constructs a new {@link Header}.
+		 *
+		 * @param chunkSize
+		 *            the size of a chunk
+		 * @param length
+		 *            the length of the original file
+		 * @param salt
+		 *            the salt of the nonces
+		 * @throws IllegalArgumentException
+		 *             if the file would have too many chunks
+		 */
+		Header(int chunkSize, long length, byte[] salt) {
+			if ((length + chunkSize - 1) / chunkSize > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The chunk size is too small for a file of " + length + " bytes!");
+			}
+			this.chunkSize = chunkSize;
+			this.length = length;
+			this.salt = salt;
+			this.bytes = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(chunkSize)
+					.putLong(length).put(salt).array();
+		}
+
+		/**
+		 * Reads the header of a container and checks that the size of the
+		 * container matches it.
+		 *
+		 * @param channel
+		 *            the container
+		 * @return the header
+		 * @throws IOException
+		 *             in case reading goes awry, or the container is malformed
+		 */
+		static Header read(FileChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, buffer, 0);
+			buffer.flip();
+
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("The file is not a chunked container!");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported container version: " + version);
+			}
+			int chunkSize = buffer.getInt();
+			long length = buffer.getLong();
+			if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE || length < 0) {
+				throw new IOException("The container header is corrupted!");
+			}
+			byte[] salt = new byte[NONCE_SIZE];
+			buffer.get(salt);
+
+			Header header = new Header(chunkSize, length, salt);
+			if (channel.size() != header.sealedOffset(header.chunks() - 1) + header.plainSize(header.chunks() - 1)
+					+ TAG_SIZE) {
+				throw new IOException("The container is truncated or corrupted!");
+			}
+			return header;
+		}
+
+		/**
+		 * @return a copy of the encoded header
+		 */
+		byte[] toBytes() {
+			return bytes.clone();
+		}
+
+		/**
+		 * @return the number of chunks; an empty file still has a single,
+		 *         empty chunk
+		 */
+		int chunks() {
+			return (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+		}
+
+		/**
+		 * @param index
+		 *            the index of a chunk
+		 * @return the size of the chunk's plaintext
+		 */
+		int plainSize(int index) {
+			return (int) Math.min(chunkSize, length - plainOffset(index));
+		}
+
+		/**
+		 * @param index
+		 *            the index of a chunk
+		 * @return the offset of the chunk in the original file
+		 */
+		long plainOffset(int index) {
+			return (long) index * chunkSize;
+		}
+
+		/**
+		 * @param index
+		 *            the index of a chunk
+		 * @return the offset of the chunk in the container
+		 */
+		long sealedOffset(int index) {
+			return HEADER_SIZE + (long) index * (chunkSize + TAG_SIZE);
+		}
+	}
+}
@@ -1,22 +1,24 @@
 package hr.fer.zemris.java.hw07.crypto;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.AlgorithmParameterSpec;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -30,7 +32,22 @@ import javax.crypto.spec.SecretKeySpec;
  * <p>
  * <code>checksha</code> - needs to be followed by a path to a file. The
  * specified file will then be able to have its SHA-256 digest checked. The
- * digest used for checking is input via the command line.
+ * digest used for checking is input via the command line, or given by the
+ * option <code>--digest DIGEST</code>. If followed by
+ * multiple paths, or by a directory, all of the (contained) files are digested
+ * concurrently, and a manifest compatible with <code>sha256sum</code> is
+ * printed. The option <code>-j N</code> sets the number of threads, and
+ * <code>-o FILE</code> writes the manifest to a file.
+ * <p>
+ * <code>checksha --write-manifest MANIFEST</code> - followed by paths, stores
+ * the digests, sizes and modification times of the files in a
+ * {@link ChecksumManifest}. Digests of files which are unchanged since the
+ * previous manifest was written are reused, unless <code>--full</code> is
+ * given.
+ * <p>
+ * <code>checksha --verify-manifest MANIFEST</code> - verifies the files listed
+ * in a manifest. Only the files whose size or modification time changed are
+ * digested again, unless <code>--full</code> is given.
  * <p>
  * <code>encrypt</code> - needs to be followed by two arguments - an input file,
  * which is the file to be encrypted, and the output file, which will be the
@@ -44,19 +61,90 @@ import javax.crypto.spec.SecretKeySpec;
  * and a hex-encoded intialization vector, also provided by the user via the
  * command line.
  * <p>
+ * <code>encrypt --mode gcm-chunked</code> and
+ * <code>decrypt --mode gcm-chunked</code> - use the chunked AES-GCM container
+ * format of {@link ChunkedCipher} instead of AES-CBC, so the chunks are
+ * processed in parallel (<code>-j N</code> threads). The option
+ * <code>--chunk-size N</code> sets the size of a chunk when encrypting, and
+ * <code>--range OFFSET:LENGTH</code> decrypts only the given byte range.
+ * <p>
+ * Instead of being read from the command line, the password and the
+ * initialization vector of <code>encrypt</code> and <code>decrypt</code> can be
+ * given by the options <code>--key</code> and <code>--iv</code>, by a key file
+ * (<code>--key-file FILE</code>), or by the environment variables
+ * <code>CRYPTO_KEY</code> and <code>CRYPTO_IV</code>.
+ * <p>
+ * <code>batch</code> - needs to be followed by a job file, which lists one
+ * <code>encrypt</code>, <code>decrypt</code> or <code>checksha</code> operation
+ * with its arguments per line. The jobs are run concurrently, using
+ * <code>-j N</code> threads, and a summary of their results is printed. See
+ * {@link BatchRunner}.
+ * <p>
  * 
  * @author 0036502252
  *
  */
 public class Crypto {
-	/**
-	 * One kilobyte. Used when initializing a byte buffer.
-	 */
-	private static final int ONE_KB = 1024;
 	/**
 	 * The prompt symbol used in the program's UI.
 	 */
 	private static final String PROMPT_SYMBOL = "> ";
+	/**
+	 * The option which sets the number of threads used for digesting.
+	 */
+	static final String JOBS_OPTION = "-j";
+	/**
+	 * The option which sets the file to which a manifest is written.
+	 */
+	private static final String OUTPUT_OPTION = "-o";
+	/**
+	 * The option which writes a checksum manifest.
+	 */
+	private static final String WRITE_MANIFEST_OPTION = "--write-manifest";
+	/**
+	 * The option which verifies the files against a checksum manifest.
+	 */
+	private static final String VERIFY_MANIFEST_OPTION = "--verify-manifest";
+	/**
+	 * The flag which disables skipping of unchanged files.
+	 */
+	private static final String FULL_FLAG = "--full";
+	/**
+	 * The option which selects the encryption mode.
+	 */
+	private static final String MODE_OPTION = "--mode";
+	/**
+	 * The default encryption mode.
+	 */
+	private static final String CBC_MODE = "cbc";
+	/**
+	 * The encryption mode using {@link ChunkedCipher}.
+	 */
+	private static final String CHUNKED_MODE = "gcm-chunked";
+	/**
+	 * The option which sets the chunk size of the chunked mode.
+	 */
+	private static final String CHUNK_SIZE_OPTION = "--chunk-size";
+	/**
+	 * The option which selects the decrypted byte range in the chunked mode.
+	 */
+	private static final String RANGE_OPTION = "--range";
+	/**
+	 * The option which gives the expected digest of a file.
+	 */
+	static final String DIGEST_OPTION = "--digest";
+	/**
+	 * The valued options of the <code>encrypt</code> and <code>decrypt</code>
+	 * operations.
+	 */
+	static final String[] CRYPT_OPTIONS = { MODE_OPTION, JOBS_OPTION, CHUNK_SIZE_OPTION, RANGE_OPTION,
+			KeySource.KEY_OPTION, KeySource.IV_OPTION, KeySource.KEY_FILE_OPTION };
+
+	/**
+	 * Reads the user's answers to the prompts. Shared by all of the prompts, and
+	 * never closed, since closing it would close the standard input.
+	 */
+	private static Scanner input;
 
 	/**
 	 * Main method of the program. Performs a desired operation based on the command
@@ -67,25 +155,28 @@ public class Crypto {
 	 *            <code>decrypt, encrypt</code> and <code>checksha</code>.
 	 */
 	public static void main(String[] args) {
-		if (args.length == 2) {
+		if (args.length > 0 && args[0].equals("batch")) {
+			runBatch(Arrays.asList(args).subList(1, args.length));
+
+		} else if (args.length > 0 && args[0].equals("checksha")
+				&& (args.length != 2 || Files.isDirectory(Paths.get(args[1])))) {
+			checkAll(Arrays.asList(args).subList(1, args.length));
+
+		} else if (args.length >= 3 && (args[0].equals("encrypt") || args[0].equals("decrypt"))) {
+			encryptDecrypt(Arrays.asList(args).subList(1, args.length), args[0].equals("encrypt"));
+
+		} else if (args.length == 2) {
 
 			if (!args[0].equals("checksha")) {
 				System.out.println("Invalid arguments. Arguments were: " + args[0] + " " + args[1] + "\nExiting..");
 				return;
 			}
-			checkSHA(args[1]);
+			checkSHA(args[1], null);
 
 		} else if (args.length == 3) {
 
-			if (args[0].equals("encrypt")) {
-				encryptDecrypt(args[1], args[2], true);
-			} else if (args[0].equals("decrypt")) {
-				encryptDecrypt(args[1], args[2], false);
-			} else {
-				System.out.println("Invalid arguments. Arguments were: " + args[0] + " " + args[1] + " " + args[2]
-						+ "\nExiting..");
-
-			}
+			System.out.println("Invalid arguments. Arguments were: " + args[0] + " " + args[1] + " " + args[2]
+					+ "\nExiting..");
 
 		} else {
 			System.out.println("Invalid number of command line arguments!");
@@ -101,20 +192,19 @@ public class Crypto {
 	 * 
 	 * @param filename
 	 *            the file to be checked
+	 * @param expectedDigest
+	 *            the expected digest, or null if the user should be asked for it
 	 */
-	private static void checkSHA(String filename) {
-		System.out.println("Please provide expected sha-256 digest for " + filename + " :");
-		System.out.print(PROMPT_SYMBOL);
-
-		Scanner sc = new Scanner(System.in);
-		String expectedDigest = sc.next();
-		sc.close();
+	private static void checkSHA(String filename, String expectedDigest) {
+		if (expectedDigest == null) {
+			expectedDigest = prompt("Please provide expected sha-256 digest for " + filename + " :");
+		}
 
 		String actualDigest = getDigest(filename);
 		if (actualDigest == null) {
 			System.out.println("Could not generate digest.");
 
-		} else if (actualDigest.equals(expectedDigest)) {
+		} else if (actualDigest.equalsIgnoreCase(expectedDigest)) {
 			System.out.println("Digesting completed. Digest of " + filename + " matches expected digest.");
 
 		} else {
@@ -125,41 +215,250 @@ public class Crypto {
 	}
 
 	/**
-	 * Gets the digest of a file, by reading it and using the {@link MessageDigest}
-	 * class to generate the byte array representing the hash.
+	 * Digests multiple files, or all files contained in the given directories,
+	 * concurrently. Prints a manifest in the format used by
+	 * <code>sha256sum</code>: the hex-encoded digest, two spaces and the path.
 	 * 
-	 * @param filename
-	 *            the name of the file used for hashing
-	 * @return the string hex representation of the byte array digest
+	 * @param args
+	 *            the paths and options of the <code>checksha</code> operation
 	 */
-	private static String getDigest(String filename) {
+	private static void checkAll(List<String> args) {
+		Arguments arguments;
+		int threads;
+		List<Path> files = new ArrayList<>();
 		try {
-			MessageDigest sha = MessageDigest.getInstance("SHA-256");
-
-			try (InputStream is = Files.newInputStream(Paths.get(filename), StandardOpenOption.READ)) {
-				if (Paths.get(filename).toFile().isFile()) {
-					byte[] buff = new byte[ONE_KB];
-					while (true) {
-						int r = is.read(buff);
-						if (r < 1) break;
-						sha.update(buff, 0, r);
-					}
+			arguments = new Arguments(args, new String[] { FULL_FLAG }, JOBS_OPTION, OUTPUT_OPTION,
+					WRITE_MANIFEST_OPTION, VERIFY_MANIFEST_OPTION, DIGEST_OPTION);
+			threads = arguments.getPositiveInt(JOBS_OPTION, Runtime.getRuntime().availableProcessors());
+			for (String arg : arguments.getPositional()) {
+				files.addAll(listFiles(Paths.get(arg)));
+			}
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println("Invalid arguments: " + e.getMessage());
+			return;
+		}
+
+		String expectedDigest = arguments.get(DIGEST_OPTION, null);
+		if (expectedDigest != null) {
+			if (arguments.getPositional().size() != 1) {
+				System.out.println("Option " + DIGEST_OPTION + " expects a single file.");
+			} else {
+				checkSHA(arguments.getPositional().get(0), expectedDigest);
+			}
+			return;
+		}
+
+		String verified = arguments.get(VERIFY_MANIFEST_OPTION, null);
+		if (verified != null) {
+			verifyManifest(Paths.get(verified), threads, arguments.hasFlag(FULL_FLAG));
+			return;
+		}
+
+		if (files.isEmpty()) {
+			System.out.println("No files to digest.");
+			return;
+		}
+
+		String written = arguments.get(WRITE_MANIFEST_OPTION, null);
+		if (written != null) {
+			writeManifest(Paths.get(written), files, threads, arguments.hasFlag(FULL_FLAG));
+			return;
+		}
+
+		String output = arguments.get(OUTPUT_OPTION, null);
+		try (PrintStream manifest = output == null ? null
+				: new PrintStream(Files.newOutputStream(Paths.get(output)), false, StandardCharsets.UTF_8.name())) {
+			PrintStream out = manifest == null ? System.out : manifest;
+			int[] failed = new int[1];
+
+			new FileDigester(threads).digestAll(files, (file, digest, error) -> {
+				if (digest == null) {
+					System.err.println("Could not digest " + file + ": " + error);
+					failed[0]++;
+				} else {
+					out.print(digest + "  " + file + "\n");
+				}
+			});
+
+			out.flush();
+			if (manifest != null) {
+				System.out.println("Digested " + (files.size() - failed[0]) + " files into " + output + ".");
+			}
+		} catch (IOException e) {
+			System.out.println("Could not write the manifest: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes a checksum manifest of the given files. If the manifest already
+	 * exists, the digests of the files whose size and modification time did not
+	 * change are reused.
+	 * 
+	 * @param manifestFile
+	 *            the manifest file
+	 * @param files
+	 *            the files to be listed in the manifest
+	 * @param threads
+	 *            the number of threads used for digesting
+	 * @param full
+	 *            true if all files are digested, even if they did not change
+	 */
+	private static void writeManifest(Path manifestFile, List<Path> files, int threads, boolean full) {
+		try {
+			ChecksumManifest previous = !full && Files.exists(manifestFile) ? ChecksumManifest.read(manifestFile)
+					: new ChecksumManifest();
+
+			Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+			List<Path> changed = new ArrayList<>();
+			for (Path file : files) {
+				BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				attributes.put(file, attrs);
+				ChecksumManifest.Entry entry = previous.get(file);
+				if (entry == null || !entry.matches(attrs)) {
+					changed.add(file);
+				}
+			}
+
+			Map<Path, String> digests = new HashMap<>();
+			new FileDigester(threads).digestAll(changed, (file, digest, error) -> {
+				if (digest == null) {
+					System.err.println("Could not digest " + file + ": " + error);
+				} else {
+					digests.put(file, digest);
+				}
+			});
+
+			ChecksumManifest manifest = new ChecksumManifest();
+			for (Path file : files) {
+				String digest = digests.containsKey(file) ? digests.get(file) : previous.get(file) == null ? null
+						: previous.get(file).digest;
+				if (digest != null) {
+					manifest.put(new ChecksumManifest.Entry(file, attributes.get(file), digest));
+				}
+			}
+			manifest.write(manifestFile);
+
+			System.out.println("Wrote " + manifest.entries().size() + " entries to " + manifestFile + " (digested "
+					+ digests.size() + ", reused " + (manifest.entries().size() - digests.size()) + ").");
+		} catch (IOException e) {
+			System.out.println("Could not write the manifest: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
 
-					byte[] hash = sha.digest();
+	/**
+	 * Verifies the files listed in a checksum manifest. Files whose size and
+	 * modification time match the manifest are skipped unless <code>full</code>
+	 * is true, files whose size changed fail without being digested. Prints
+	 * every file which failed, followed by a summary. If the content of a file
+	 * with a changed modification time still matches, its entry is updated.
+	 * 
+	 * @param manifestFile
+	 *            the manifest file
+	 * @param threads
+	 *            the number of threads used for digesting
+	 * @param full
+	 *            true if all files are digested, even if they did not change
+	 */
+	private static void verifyManifest(Path manifestFile, int threads, boolean full) {
+		try {
+			ChecksumManifest manifest = ChecksumManifest.read(manifestFile);
+
+			Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+			List<Path> toDigest = new ArrayList<>();
+			int[] counts = new int[4]; // skipped, ok, failed, missing
+
+			for (ChecksumManifest.Entry entry : manifest.entries()) {
+				BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(entry.path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					System.out.println(entry.path + ": MISSING");
+					counts[3]++;
+					continue;
+				}
 
-					String hashedString = Util.byteToHex(hash);
+				if (attrs.size() != entry.size) {
+					System.out.println(entry.path + ": FAILED (size changed)");
+					counts[2]++;
+				} else if (!full && entry.matches(attrs)) {
+					counts[0]++;
+				} else {
+					attributes.put(entry.path, attrs);
+					toDigest.add(entry.path);
+				}
+			}
 
-					return hashedString;
+			boolean[] updated = new boolean[1];
+			new FileDigester(threads).digestAll(toDigest, (file, digest, error) -> {
+				ChecksumManifest.Entry entry = manifest.get(file);
+				if (digest == null) {
+					System.out.println(file + ": FAILED (" + error + ")");
+					counts[2]++;
+				} else if (!digest.equals(entry.digest)) {
+					System.out.println(file + ": FAILED");
+					counts[2]++;
 				} else {
-					System.out.println("Given path is not a file! ");
-					return null;
+					counts[1]++;
+					if (!entry.matches(attributes.get(file))) {
+						manifest.put(new ChecksumManifest.Entry(file, attributes.get(file), digest));
+						updated[0] = true;
+					}
 				}
+			});
 
-			} catch (IOException e) {
-				e.printStackTrace();
+			if (updated[0]) {
+				manifest.write(manifestFile);
 			}
 
-		} catch (NoSuchAlgorithmException e) {
+			System.out.println("Verified " + counts[1] + " files, skipped " + counts[0] + " unchanged files, "
+					+ counts[2] + " failed, " + counts[3] + " missing.");
+		} catch (IOException e) {
+			System.out.println("Could not verify the manifest: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lists the regular files denoted by a path: the file itself, or all of
+	 * the files in a directory tree, sorted by their paths.
+	 * 
+	 * @param path
+	 *            the file or directory
+	 * @return the list of files
+	 * @throws IOException
+	 *             if the directory can not be walked
+	 */
+	private static List<Path> listFiles(Path path) throws IOException {
+		if (!Files.isDirectory(path)) {
+			return Arrays.asList(path);
+		}
+		try (Stream<Path> stream = Files.walk(path)) {
+			return stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Gets the digest of a file, by reading it and using the {@link FileDigester}
+	 * class to generate the byte array representing the hash.
+	 * 
+	 * @param filename
+	 *            the name of the file used for hashing
+	 * @return the string hex representation of the byte array digest
+	 */
+	private static String getDigest(String filename) {
+		if (!Paths.get(filename).toFile().isFile()) {
+			System.out.println("Given path is not a file! ");
+			return null;
+		}
+
+		try {
+			return new FileDigester(1).digest(Paths.get(filename));
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
@@ -168,85 +467,217 @@ public class Crypto {
 	}
 
 	/**
-	 * Encrypts or decrypts a file based on the operation of choice.
+	 * Checks whether the SHA-256 digest of a file matches the expected one.
 	 * 
-	 * @param inputPath
-	 *            the path of the file to be encrypted/decrypted
-	 * @param outputPath
-	 *            the path of the resulting file
-	 * @param encrypt
-	 *            true if the user desires encryption, false if the user desires
-	 *            decryption of the file <code>inputPath</code>
+	 * @param file
+	 *            the file to be checked
+	 * @param expectedDigest
+	 *            the hex-encoded expected digest
+	 * @return true if the digests match
+	 * @throws IOException
+	 *             in case reading goes awry
 	 */
-	private static void encryptDecrypt(String inputPath, String outputPath, boolean encrypt) {
-		System.out.println("Please provide password as hex-encoded text (16 bytes, i.e. 32 hex-digits):");
-		System.out.print(PROMPT_SYMBOL);
-		Scanner sc = new Scanner(System.in);
-		String password = sc.next();
+	static boolean digestMatches(Path file, String expectedDigest) throws IOException {
+		return new FileDigester(1).digest(file).equalsIgnoreCase(expectedDigest);
+	}
 
-		System.out.println("Please provide initialization vector as hex-encoded text (32 hex-digits):");
+	/**
+	 * Prints a message and reads the user's answer from the standard input.
+	 * 
+	 * @param message
+	 *            the message describing the expected answer
+	 * @return the answer
+	 */
+	private static String prompt(String message) {
+		System.out.println(message);
 		System.out.print(PROMPT_SYMBOL);
-		String initVector = sc.next();
-		sc.close();
-
-		SecretKeySpec keySpec = new SecretKeySpec(Util.hexToByte(password), "AES");
-		AlgorithmParameterSpec paramSpec = new IvParameterSpec(Util.hexToByte(initVector));
-		Cipher cipher = null;
+		if (input == null) {
+			input = new Scanner(System.in);
+		}
+		return input.next();
+	}
 
+	/**
+	 * Encrypts or decrypts a file using the mode and the options given in the
+	 * arguments. The key and the initialization vector which are given neither
+	 * by the arguments nor by the environment are read from the standard input.
+	 * 
+	 * @param args
+	 *            the paths and options of the <code>encrypt</code> or
+	 *            <code>decrypt</code> operation
+	 * @param encrypt
+	 *            true if the user desires encryption
+	 */
+	private static void encryptDecrypt(List<String> args, boolean encrypt) {
+		Arguments arguments;
+		KeySource keys;
 		try {
-			cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-			e.printStackTrace();
+			arguments = new Arguments(args, CRYPT_OPTIONS);
+			keys = KeySource.fromArguments(arguments, KeySource.fromEnvironment(System.getenv()));
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println("Invalid arguments: " + e.getMessage());
+			return;
 		}
 
-		try {
-			cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keySpec, paramSpec);
-		} catch (InvalidKeyException e) {
-			System.out.println("Invalid key!");
-		} catch (InvalidAlgorithmParameterException e) {
-			System.out.println("Invalid parameter specification!");
+		List<String> paths = arguments.getPositional();
+		if (paths.size() != 2) {
+			System.out.println("Expected an input and an output file, got: " + paths);
+			return;
 		}
 
-		processFile(inputPath, outputPath, cipher);
+		String key = keys.getKey() != null ? keys.getKey()
+				: prompt("Please provide password as hex-encoded text (16 bytes, i.e. 32 hex-digits):");
+		String iv = keys.getIv() != null ? keys.getIv()
+				: prompt("Please provide initialization vector as hex-encoded text (32 hex-digits):");
 
-		System.out.println((encrypt ? "Encryption" : "Decryption") + " completed. Generated file " + outputPath
-				+ " based on file " + inputPath + ".");
+		long start = System.nanoTime();
+		try {
+			long bytes = crypt(arguments, new KeySource(key, iv), encrypt, Runtime.getRuntime().availableProcessors());
+
+			double elapsed = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("Processed %d bytes in %.3f s (%.1f MB/s).", bytes, elapsed,
+					bytes / (1024.0 * 1024.0) / Math.max(elapsed, 1e-9)));
+			System.out.println((encrypt ? "Encryption" : "Decryption") + " completed. Generated file " + paths.get(1)
+					+ " based on file " + paths.get(0) + ".");
+		} catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+			System.out.println((encrypt ? "Encryption" : "Decryption") + " failed: " + e.getMessage());
+		}
 	}
 
 	/**
-	 * Processes a given file. This method is called by the
-	 * <code>encryptDecrypt</code> method. It generates an encrypted/decrypted file
-	 * based on the cipher's settings.
+	 * Encrypts or decrypts the file given by the arguments, without any
+	 * interaction with the user. If the cipher fails, the output file is
+	 * deleted, since it holds a partial or unauthenticated result.
 	 * 
-	 * @param input
-	 *            the path of the file to be encrypted/decrypted
-	 * @param output
-	 *            the path of the resulting file
-	 * @param cipher
-	 *            the cipher used for file encryption/decryption
-	 */
-	private static void processFile(String input, String output, Cipher cipher) {
-		try (InputStream is = Files.newInputStream(Paths.get(input), StandardOpenOption.READ);
-				OutputStream os = Files.newOutputStream(Paths.get(output))) {
-
-			byte[] buffer = new byte[ONE_KB];
-			while (true) {
-				int r = is.read(buffer);
-				if (r < 1) break;
-				os.write(cipher.update(buffer, 0, r));
-			}
+	 * @param arguments
+	 *            the parsed arguments of the <code>encrypt</code> or
+	 *            <code>decrypt</code> operation, parsed with
+	 *            {@link #CRYPT_OPTIONS}
+	 * @param keys
+	 *            the key and the initialization vector
+	 * @param encrypt
+	 *            true if the file is encrypted
+	 * @param defaultThreads
+	 *            the number of threads used by the chunked mode, unless given by
+	 *            the arguments
+	 * @return the number of processed bytes
+	 * @throws IOException
+	 *             in case reading or writing goes awry
+	 * @throws GeneralSecurityException
+	 *             if the cipher fails
+	 * @throws IllegalArgumentException
+	 *             if the arguments, the key or the initialization vector are
+	 *             invalid
+	 */
+	static long crypt(Arguments arguments, KeySource keys, boolean encrypt, int defaultThreads)
+			throws IOException, GeneralSecurityException {
+		List<String> paths = arguments.getPositional();
+		if (paths.size() != 2) {
+			throw new IllegalArgumentException("Expected an input and an output file, got: " + paths);
+		}
+		if (keys.getKey() == null || keys.getIv() == null) {
+			throw new IllegalArgumentException("The key and the initialization vector are required.");
+		}
+
+		int threads = arguments.getPositiveInt(JOBS_OPTION, defaultThreads);
+		int chunkSize = arguments.getPositiveInt(CHUNK_SIZE_OPTION, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+		String rangeValue = arguments.get(RANGE_OPTION, null);
+		long[] range = rangeValue == null ? null : parseRange(rangeValue);
+		String mode = arguments.get(MODE_OPTION, CBC_MODE);
+
+		byte[] key = Util.hexToByte(keys.getKey());
+		byte[] iv = Util.hexToByte(keys.getIv());
+		Path input = Paths.get(paths.get(0));
+		Path output = Paths.get(paths.get(1));
+
+		Cipher cbc = null;
+		ChunkedCipher chunked = null;
+		if (mode.equals(CBC_MODE) && range == null) {
+			cbc = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cbc.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+					new IvParameterSpec(iv));
+		} else if (mode.equals(CHUNKED_MODE) && !(encrypt && range != null)) {
+			chunked = new ChunkedCipher(key, iv, threads);
+		} else {
+			throw new IllegalArgumentException("Unsupported mode or option combination: " + mode);
+		}
 
-			byte[] result = cipher.doFinal();
+		// the output is only touched from here on, so it is only deleted if
+		// it was written by this operation
+		try {
+			if (cbc != null) {
+				return new FileCipher(cbc).process(input, output);
+			} else if (encrypt) {
+				return chunked.encrypt(input, output, chunkSize);
+			}
+			return range == null ? chunked.decrypt(input, output)
+					: chunked.decrypt(input, output, range[0], range[1]);
+		} catch (GeneralSecurityException e) {
+			Files.deleteIfExists(output);
+			throw e;
+		}
+	}
 
-			os.write(result);
+	/**
+	 * Parses a byte range given as <code>OFFSET:LENGTH</code>.
+	 * 
+	 * @param range
+	 *            the range to be parsed
+	 * @return the offset and the length
+	 * @throws IllegalArgumentException
+	 *             if the range is malformed
+	 */
+	private static long[] parseRange(String range) {
+		String[] parts = range.split(":");
+		try {
+			if (parts.length == 2) {
+				long offset = Long.parseLong(parts[0]);
+				long length = Long.parseLong(parts[1]);
+				if (offset >= 0 && length >= 0) {
+					return new long[] { offset, length };
+				}
+			}
+		} catch (NumberFormatException ignorable) {
+		}
+		throw new IllegalArgumentException("Expected a range OFFSET:LENGTH, was: " + range);
+	}
 
+	/**
+	 * Runs the jobs listed in a batch job file concurrently, and prints a
+	 * summary of their results.
+	 * 
+	 * @param args
+	 *            the job file and the options of the <code>batch</code>
+	 *            operation
+	 */
+	private static void runBatch(List<String> args) {
+		Arguments arguments;
+		int threads;
+		KeySource keys;
+		List<List<String>> jobs;
+		try {
+			arguments = new Arguments(args, JOBS_OPTION, KeySource.KEY_OPTION, KeySource.IV_OPTION,
+					KeySource.KEY_FILE_OPTION);
+			threads = arguments.getPositiveInt(JOBS_OPTION, Runtime.getRuntime().availableProcessors());
+			keys = KeySource.fromArguments(arguments, KeySource.fromEnvironment(System.getenv()));
+			if (arguments.getPositional().size() != 1) {
+				throw new IllegalArgumentException("Expected a single job file.");
+			}
+			jobs = BatchRunner.readJobs(Paths.get(arguments.getPositional().get(0)));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid arguments: " + e.getMessage());
+			return;
 		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (IllegalBlockSizeException e) {
-			e.printStackTrace();
-		} catch (BadPaddingException e) {
-			e.printStackTrace();
+			System.out.println("Could not read the job file or the key file: " + e);
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			List<BatchRunner.Result> results = new BatchRunner(threads, keys).run(jobs);
+			BatchRunner.printSummary(results, System.out, (System.nanoTime() - start) / 1e9);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
-	
 }
\ No newline at end of file
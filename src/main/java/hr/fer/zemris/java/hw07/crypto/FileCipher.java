@@ -0,0 +1,202 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.crypto.Cipher;
+
+/**
+ * Encrypts or decrypts a file using an initialized {@link Cipher}. The file is
+ * read in large chunks by a separate reader thread, so reading the next chunk
+ * overlaps with the cipher's work on the current one. The chunks are passed
+ * between the threads through a fixed set of reused buffers, and the cipher
+ * writes into a single reused output buffer, so no garbage is produced per
+ * chunk.
+ * <p>
+ * Heap buffers are used on purpose: the cipher works directly on their backing
+ * arrays, while direct buffers would have to be copied to the heap first.
+ *
+ * @author 0036502252
+ *
+ */
+public class FileCipher {
+	/**
+	 * The size of a single chunk of the file.
+	 */
+	public static final int CHUNK_SIZE = 1024 * 1024;
+	/**
+	 * The number of buffers circulating between the reader and the cipher.
+	 */
+	private static final int BUFFERS = 4;
+	/**
+	 * Marks the end of the file in the queue of full buffers.
+	 */
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+	/**
+	 * The cipher used for processing the file.
+	 */
+	private Cipher cipher;
+
+	/**
+	 * Constructs a new {@link FileCipher}.
+	 *
+	 * @param cipher
+	 *            an initialized cipher
+	 */
+	public FileCipher(Cipher cipher) {
+		this.cipher = cipher;
+	}
+
+	/**
+	 * Processes the input file with the cipher and writes the result to the
+	 * output file.
+	 *
+	 * @param input
+	 *            the file to be encrypted or decrypted
+	 * @param output
+	 *            the resulting file
+	 * @return the number of bytes read from the input file
+	 * @throws IOException
+	 *             in case reading or writing goes awry
+	 * @throws GeneralSecurityException
+	 *             if the cipher fails, e.g. because of bad padding
+	 */
+	public long process(Path input, Path output) throws IOException, GeneralSecurityException {
+		BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<>(BUFFERS);
+		BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+		for (int i = 0; i < BUFFERS; i++) {
+			empty.add(ByteBuffer.allocate(CHUNK_SIZE));
+		}
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			Reader reader = new Reader(in, empty, full);
+			Thread thread = new Thread(reader, "crypto-reader");
+			thread.setDaemon(true);
+			thread.start();
+
+			try {
+				ByteBuffer result = ByteBuffer.allocate(cipher.getOutputSize(CHUNK_SIZE + cipher.getBlockSize()));
+				long total = 0;
+				while (true) {
+					ByteBuffer chunk = full.take();
+					if (chunk == EOF) {
+						break;
+					}
+
+					total += chunk.remaining();
+					result.clear();
+					cipher.update(chunk, result);
+					write(out, result);
+					empty.put(chunk);
+				}
+
+				if (reader.error != null) {
+					throw reader.error;
+				}
+
+				result.clear();
+				cipher.doFinal(ByteBuffer.allocate(0), result);
+				write(out, result);
+				return total;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while processing " + input, e);
+			} finally {
+				thread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Writes the contents of the buffer to the channel.
+	 *
+	 * @param out
+	 *            the channel
+	 * @param buffer
+	 *            the buffer whose contents (up to its position) are written
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Fills the empty buffers with chunks of the file and passes them on, until
+	 * the end of the file is reached. The end of the file, or an error, is
+	 * signalled by {@link FileCipher#EOF}.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	private static class Reader implements Runnable {
+		/**
+		 * The file being read.
+		 */
+		private FileChannel in;
+		/**
+		 * The buffers which may be filled.
+		 */
+		private BlockingQueue<ByteBuffer> empty;
+		/**
+		 * The filled buffers.
+		 */
+		private BlockingQueue<ByteBuffer> full;
+		/**
+		 * The error which stopped the reading, if any.
+		 */
+		private volatile IOException error;
+
+		/**
+		 * Constructs a new {@link Reader}.
+		 *
+		 * @param in
+		 *            the file being read
+		 * @param empty
+		 *            the buffers which may be filled
+		 * @param full
+		 *            the filled buffers
+		 */
+		Reader(FileChannel in, BlockingQueue<ByteBuffer> empty, BlockingQueue<ByteBuffer> full) {
+			this.in = in;
+			this.empty = empty;
+			this.full = full;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					ByteBuffer buffer = empty.take();
+					buffer.clear();
+					while (buffer.hasRemaining() && in.read(buffer) != -1) {
+						// fill the whole chunk
+					}
+					buffer.flip();
+					if (!buffer.hasRemaining()) {
+						break;
+					}
+					full.put(buffer);
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				return;
+			}
+			full.add(EOF);
+		}
+	}
+}
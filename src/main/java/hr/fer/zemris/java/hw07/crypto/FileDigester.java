@@ -0,0 +1,156 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calculates SHA-256 digests of files. Files are read through a
+ * {@link FileChannel} into a large direct buffer, so the bytes are not copied
+ * into the Java heap before being digested. Many files can be digested
+ * concurrently using {@link #digestAll(List, ResultListener)}.
+ * 
+ * @author 0036502252
+ *
+ */
+public class FileDigester {
+	/**
+	 * The size of the buffer used for reading a file.
+	 */
+	public static final int BUFFER_SIZE = 1024 * 1024;
+	/**
+	 * The name of the digest algorithm.
+	 */
+	private static final String ALGORITHM = "SHA-256";
+
+	/**
+	 * The number of threads used by {@link #digestAll(List, ResultListener)}.
+	 */
+	private int threads;
+	/**
+	 * The buffer of each thread, allocated when first needed.
+	 */
+	private ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+	/**
+	 * Constructs a new {@link FileDigester}.
+	 * 
+	 * @param threads
+	 *            the number of threads used for digesting multiple files
+	 */
+	public FileDigester(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed!");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Digests a single file on the calling thread.
+	 * 
+	 * @param file
+	 *            the file to be digested
+	 * @return the hex-encoded digest of the file
+	 * @throws IOException
+	 *             in case reading goes awry
+	 */
+	public String digest(Path file) throws IOException {
+		return Util.byteToHex(digest(file, buffers.get()));
+	}
+
+	/**
+	 * Digests multiple files concurrently. The results are passed to the
+	 * listener on the calling thread, in the order of the given files.
+	 * 
+	 * @param files
+	 *            the files to be digested
+	 * @param listener
+	 *            receives the result for each file
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	public void digestAll(List<Path> files, ResultListener listener) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+		try {
+			List<Future<String>> results = new ArrayList<>(files.size());
+			for (Path file : files) {
+				results.add(pool.submit(() -> digest(file)));
+			}
+
+			for (int i = 0; i < files.size(); i++) {
+				try {
+					listener.digested(files.get(i), results.get(i).get(), null);
+				} catch (ExecutionException ex) {
+					listener.digested(files.get(i), null, ex.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Digests a file using the given buffer.
+	 * 
+	 * @param file
+	 *            the file to be digested
+	 * @param buffer
+	 *            the buffer used for reading the file
+	 * @return the digest of the file
+	 * @throws IOException
+	 *             in case reading goes awry
+	 */
+	static byte[] digest(Path file, ByteBuffer buffer) throws IOException {
+		MessageDigest sha = newDigest();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer.clear();
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				sha.update(buffer);
+				buffer.clear();
+			}
+		}
+		return sha.digest();
+	}
+
+	/**
+	 * @return a new SHA-256 message digest
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not supported!", e);
+		}
+	}
+
+	/**
+	 * Receives the results of {@link FileDigester#digestAll(List, ResultListener)}.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	public interface ResultListener {
+		/**
+		 * Called when a file has been digested.
+		 * 
+		 * @param file
+		 *            the digested file
+		 * @param digest
+		 *            the hex-encoded digest, or null if digesting failed
+		 * @param error
+		 *            the reason why digesting failed, or null
+		 */
+		void digested(Path file, String digest, Throwable error);
+	}
+}
@@ -0,0 +1,161 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A writer which decodes the written hexadecimal digits and writes the
+ * resulting bytes to an {@link OutputStream}. The digits of a single byte may
+ * be split across multiple writes. The bytes are collected in a fixed buffer,
+ * so decoding does not allocate anything, and the stream is called only when
+ * the buffer fills up or when the writer is flushed.
+ * <p>
+ * Whitespace between the digits is not allowed. Closing the writer fails if
+ * an odd number of digits has been written.
+ *
+ * @author 0036502252
+ *
+ */
+public class HexDecoder extends Writer {
+	/**
+	 * The default number of buffered bytes.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The stream receiving the bytes.
+	 */
+	private OutputStream out;
+	/**
+	 * The buffered bytes.
+	 */
+	private byte[] bytes;
+	/**
+	 * The number of buffered bytes.
+	 */
+	private int position;
+	/**
+	 * The value of the first digit of an incomplete byte, or -1 if there is
+	 * none.
+	 */
+	private int high = -1;
+
+	/**
+	 * Constructs a new {@link HexDecoder} with the default capacity.
+	 *
+	 * @param out
+	 *            the stream receiving the bytes
+	 */
+	public HexDecoder(OutputStream out) {
+		this(out, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new {@link HexDecoder}.
+	 *
+	 * @param out
+	 *            the stream receiving the bytes
+	 * @param capacity
+	 *            the number of buffered bytes
+	 */
+	public HexDecoder(OutputStream out, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be positive!");
+		}
+		this.out = out;
+		this.bytes = new byte[capacity];
+	}
+
+	/**
+	 * Decodes the written digits.
+	 *
+	 * @throws NumberFormatException
+	 *             if a character is not a hexadecimal digit
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		int i = off;
+		if (i < end && high >= 0) {
+			put(high << 4 | digit(cbuf[i++]));
+			high = -1;
+		}
+
+		while (end - i >= 2) {
+			if (position == bytes.length) {
+				flushBuffer();
+			}
+			int n = Math.min((end - i) / 2, bytes.length - position);
+			position += Util.decode(cbuf, i, n * 2, bytes, position);
+			i += n * 2;
+		}
+
+		if (i < end) {
+			high = digit(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Flushes the decoded bytes and closes the stream.
+	 *
+	 * @throws IOException
+	 *             if an odd number of digits has been written, or in case
+	 *             writing goes awry
+	 */
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		out.close();
+		if (high >= 0) {
+			throw new IOException("Hex encoded text must have an even number of characters!");
+		}
+	}
+
+	/**
+	 * Buffers a single decoded byte.
+	 *
+	 * @param b
+	 *            the byte
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private void put(int b) throws IOException {
+		if (position == bytes.length) {
+			flushBuffer();
+		}
+		bytes[position++] = (byte) b;
+	}
+
+	/**
+	 * Writes the buffered bytes to the stream.
+	 *
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private void flushBuffer() throws IOException {
+		out.write(bytes, 0, position);
+		position = 0;
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return the value of the character as a hexadecimal digit
+	 * @throws NumberFormatException
+	 *             if the character is not a hexadecimal digit
+	 */
+	private static int digit(char c) {
+		int digit = Util.digit(c);
+		if (digit < 0) {
+			throw new NumberFormatException("Invalid character: " + c);
+		}
+		return digit;
+	}
+}
@@ -0,0 +1,105 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * An output stream which encodes the written bytes as lowercase hexadecimal
+ * digits and writes them to a {@link Writer}. The digits are collected in a
+ * fixed buffer, so encoding does not allocate anything, and the writer is
+ * called only when the buffer fills up or when the stream is flushed.
+ *
+ * @author 0036502252
+ *
+ */
+public class HexEncoder extends OutputStream {
+	/**
+	 * The default number of buffered digits.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The writer receiving the digits.
+	 */
+	private Writer out;
+	/**
+	 * The buffered digits.
+	 */
+	private char[] chars;
+	/**
+	 * The number of buffered digits.
+	 */
+	private int position;
+	/**
+	 * Holds the byte written by {@link #write(int)}.
+	 */
+	private byte[] single = new byte[1];
+
+	/**
+	 * Constructs a new {@link HexEncoder} with the default capacity.
+	 *
+	 * @param out
+	 *            the writer receiving the digits
+	 */
+	public HexEncoder(Writer out) {
+		this(out, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new {@link HexEncoder}.
+	 *
+	 * @param out
+	 *            the writer receiving the digits
+	 * @param capacity
+	 *            the number of buffered digits, at least 2
+	 */
+	public HexEncoder(Writer out, int capacity) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("The capacity must be at least 2!");
+		}
+		this.out = out;
+		this.chars = new char[capacity & ~1];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		for (int done = 0; done < len;) {
+			if (position == chars.length) {
+				flushBuffer();
+			}
+			int n = Math.min(len - done, (chars.length - position) / 2);
+			position += Util.encode(b, off + done, n, chars, position);
+			done += n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		out.close();
+	}
+
+	/**
+	 * Writes the buffered digits to the writer.
+	 *
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private void flushBuffer() throws IOException {
+		out.write(chars, 0, position);
+		position = 0;
+	}
+}
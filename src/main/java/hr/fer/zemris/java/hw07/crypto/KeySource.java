@@ -0,0 +1,118 @@
+package hr.fer.zemris.java.hw07.crypto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Collects the hex-encoded key and initialization vector of an encryption or
+ * decryption without asking the user. A value given as an option
+ * (<code>--key</code>, <code>--iv</code>) takes precedence over the one in a
+ * key file (<code>--key-file FILE</code>, a properties file with the entries
+ * <code>key</code> and <code>iv</code>), which takes precedence over the
+ * defaults, normally read from the environment variables
+ * {@value #KEY_VARIABLE} and {@value #IV_VARIABLE}.
+ *
+ * @author 0036502252
+ *
+ */
+class KeySource {
+	/**
+	 * The option which gives the key.
+	 */
+	static final String KEY_OPTION = "--key";
+	/**
+	 * The option which gives the initialization vector.
+	 */
+	static final String IV_OPTION = "--iv";
+	/**
+	 * The option which gives the key file.
+	 */
+	static final String KEY_FILE_OPTION = "--key-file";
+	/**
+	 * The environment variable holding the key.
+	 */
+	static final String KEY_VARIABLE = "CRYPTO_KEY";
+	/**
+	 * The environment variable holding the initialization vector.
+	 */
+	static final String IV_VARIABLE = "CRYPTO_IV";
+
+	/**
+	 * The hex-encoded key, or null if it is not known.
+	 */
+	private String key;
+	/**
+	 * The hex-encoded initialization vector, or null if it is not known.
+	 */
+	private String iv;
+
+	/**
+	 * Constructs a new {@link KeySource}.
+	 *
+	 * @param key
+	 *            the hex-encoded key, or null
+	 * @param iv
+	 *            the hex-encoded initialization vector, or null
+	 */
+	KeySource(String key, String iv) {
+		this.key = key;
+		this.iv = iv;
+	}
+
+	/**
+	 * @param environment
+	 *            the environment variables
+	 * @return the key and initialization vector given by the environment
+	 */
+	static KeySource fromEnvironment(Map<String, String> environment) {
+		return new KeySource(environment.get(KEY_VARIABLE), environment.get(IV_VARIABLE));
+	}
+
+	/**
+	 * Collects the key and initialization vector given by the options, using the
+	 * defaults for the missing values.
+	 *
+	 * @param arguments
+	 *            the arguments of an operation
+	 * @param defaults
+	 *            the source of the values not given by the arguments
+	 * @return the collected values
+	 * @throws IOException
+	 *             if the key file can not be read
+	 */
+	static KeySource fromArguments(Arguments arguments, KeySource defaults) throws IOException {
+		String key = arguments.get(KEY_OPTION, null);
+		String iv = arguments.get(IV_OPTION, null);
+
+		String keyFile = arguments.get(KEY_FILE_OPTION, null);
+		if (keyFile != null) {
+			Properties properties = new Properties();
+			try (Reader reader = Files.newBufferedReader(Paths.get(keyFile), StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			}
+			key = key != null ? key : properties.getProperty("key");
+			iv = iv != null ? iv : properties.getProperty("iv");
+		}
+
+		return new KeySource(key != null ? key : defaults.key, iv != null ? iv : defaults.iv);
+	}
+
+	/**
+	 * @return the hex-encoded key, or null if it is not known
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the hex-encoded initialization vector, or null if it is not known
+	 */
+	String getIv() {
+		return iv;
+	}
+}
@@ -1,9 +1,19 @@
 package hr.fer.zemris.java.hw07.crypto;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Utility class, which has two methods used in the 1st part of the 7th Java
  * Course homework.
- * 
+ * <p>
+ * Besides the string conversions, it offers table-driven methods which encode
+ * and decode hexadecimal text into preallocated arrays and buffers, so large
+ * amounts of data can be converted without allocating anything. See also
+ * {@link HexEncoder} and {@link HexDecoder}.
+ *
  * @author 0036502252
  *
  */
@@ -11,19 +21,32 @@ public class Util {
 	/**
 	 * The digits used in hexadecimal number representation.
 	 */
-	private static String digits = "0123456789abcdef";
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+	/**
+	 * The value of each ASCII character as a hexadecimal digit, or -1 if the
+	 * character is not a hexadecimal digit.
+	 */
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		Arrays.fill(VALUES, (byte) -1);
+		for (int i = 0; i < 16; i++) {
+			VALUES[DIGITS[i]] = (byte) i;
+			VALUES[Character.toUpperCase(DIGITS[i])] = (byte) i;
+		}
+	}
 
 	/**
 	 * Generates a byte array using a string representation of concatenated
 	 * hexadecimal numbers.
-	 * 
+	 *
 	 * @param str
 	 *            the string to be converted
 	 * @return the array of bytes according to the string's hex representation,
 	 * or an zero-length byte array if <code>str</code> is an empty string.
-	 * @throws IllegalArgumentException if the string is invalid. The string 
-	 * must be a non-null value, and have an even number of characters in 
-	 * order to be considered valid. 
+	 * @throws IllegalArgumentException if the string is invalid. The string
+	 * must be a non-null value, and have an even number of characters in
+	 * order to be considered valid.
 	 */
 	public static byte[] hexToByte(String str) {
 		if (str == null || str.length() % 2 != 0) {
@@ -32,28 +55,134 @@ public class Util {
 		}
 		if (str.isEmpty()) return new byte[0];
 		byte[] result = new byte[str.length() / 2];
-		for (int i = str.length(); i > 0;) {
-			result[i / 2 - 1] = (byte) (getDigit(str.charAt(--i))
-					| (getDigit(str.charAt(--i)) << 4));
-		}
+		decode(str, 0, str.length(), result, 0);
 		return result;
 	}
 
 	/**
-	 * Utility method for the <code><hexToByte</code> method. Gets the numeric 
+	 * Decodes hexadecimal text into a preallocated array.
+	 *
+	 * @param src
+	 *            the text holding the hexadecimal digits
+	 * @param start
+	 *            the index of the first decoded character
+	 * @param end
+	 *            the index after the last decoded character
+	 * @param dst
+	 *            the array receiving the bytes
+	 * @param offset
+	 *            the index of the first written byte
+	 * @return the number of written bytes
+	 * @throws IllegalArgumentException
+	 *             if the number of characters is odd
+	 * @throws NumberFormatException
+	 *             if a character is not a hexadecimal digit
+	 */
+	public static int decode(CharSequence src, int start, int end, byte[] dst, int offset) {
+		if ((end - start) % 2 != 0) {
+			throw new IllegalArgumentException(
+					"Hex encoded string must have an even number of characters!");
+		}
+		for (int i = start, j = offset; i < end; i += 2, j++) {
+			dst[j] = (byte) (getDigit(src.charAt(i)) << 4 | getDigit(src.charAt(i + 1)));
+		}
+		return (end - start) / 2;
+	}
+
+	/**
+	 * Decodes hexadecimal characters into a preallocated array.
+	 *
+	 * @param src
+	 *            the array holding the hexadecimal digits
+	 * @param srcOffset
+	 *            the index of the first decoded character
+	 * @param length
+	 *            the number of decoded characters
+	 * @param dst
+	 *            the array receiving the bytes
+	 * @param dstOffset
+	 *            the index of the first written byte
+	 * @return the number of written bytes
+	 * @throws IllegalArgumentException
+	 *             if the number of characters is odd
+	 * @throws NumberFormatException
+	 *             if a character is not a hexadecimal digit
+	 */
+	public static int decode(char[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		if (length % 2 != 0) {
+			throw new IllegalArgumentException(
+					"Hex encoded string must have an even number of characters!");
+		}
+		for (int i = srcOffset, j = dstOffset, end = srcOffset + length; i < end; i += 2, j++) {
+			dst[j] = (byte) (getDigit(src[i]) << 4 | getDigit(src[i + 1]));
+		}
+		return length / 2;
+	}
+
+	/**
+	 * Decodes all of the remaining characters of the source buffer into the
+	 * destination buffer. The positions of both buffers are advanced.
+	 *
+	 * @param src
+	 *            the buffer holding the hexadecimal digits
+	 * @param dst
+	 *            the buffer receiving the bytes
+	 * @throws IllegalArgumentException
+	 *             if the number of characters is odd
+	 * @throws NumberFormatException
+	 *             if a character is not a hexadecimal digit
+	 * @throws BufferOverflowException
+	 *             if the destination buffer is too small
+	 */
+	public static void decode(CharBuffer src, ByteBuffer dst) {
+		int length = src.remaining();
+		if (length % 2 != 0) {
+			throw new IllegalArgumentException(
+					"Hex encoded string must have an even number of characters!");
+		}
+		if (dst.remaining() < length / 2) {
+			throw new BufferOverflowException();
+		}
+
+		if (src.hasArray() && dst.hasArray()) {
+			decode(src.array(), src.arrayOffset() + src.position(), length, dst.array(),
+					dst.arrayOffset() + dst.position());
+			src.position(src.position() + length);
+			dst.position(dst.position() + length / 2);
+			return;
+		}
+		while (src.hasRemaining()) {
+			dst.put((byte) (getDigit(src.get()) << 4 | getDigit(src.get())));
+		}
+	}
+
+	/**
+	 * Utility method for the <code><hexToByte</code> method. Gets the numeric
 	 * value of inputted character.
 	 * @param c the inputted character
 	 * @return the digit representing the character <code>c</code>.
 	 * @throws NumberFormatException if the character is invalid
 	 */
 	private static int getDigit(char c) {
-		int digit = Character.digit(c, 16);
+		int digit = digit(c);
 		if (digit < 0) {
 			throw new NumberFormatException("Invalid character: " + c);
 		}
 		return digit;
 	}
 
+	/**
+	 * Gets the value of a hexadecimal digit.
+	 *
+	 * @param c
+	 *            the character
+	 * @return the value of the digit, or -1 if the character is not a
+	 *         hexadecimal digit
+	 */
+	static int digit(char c) {
+		return c < VALUES.length ? VALUES[c] : -1;
+	}
+
 	/**
 	 * Generates a string representation of concatenated
 	 * hexadecimal numbers, using a byte array of hexadecimal values.
@@ -63,14 +192,63 @@ public class Util {
 	 */
 	public static String byteToHex(byte[] bytes) {
 		if (bytes.length == 0) return "";
-		StringBuilder sb = new StringBuilder();
-		
-		for (int i = 0, n = bytes.length; i < n; i++) {
-			int masked = bytes[i] & 0xff;
-			sb.append(digits.charAt(masked >> 4));
-			sb.append(digits.charAt(masked & 0xf));
+		char[] chars = new char[bytes.length * 2];
+		encode(bytes, 0, bytes.length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Encodes bytes as lowercase hexadecimal digits into a preallocated array.
+	 *
+	 * @param src
+	 *            the array holding the bytes
+	 * @param srcOffset
+	 *            the index of the first encoded byte
+	 * @param length
+	 *            the number of encoded bytes
+	 * @param dst
+	 *            the array receiving the digits
+	 * @param dstOffset
+	 *            the index of the first written digit
+	 * @return the number of written digits
+	 */
+	public static int encode(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+		for (int i = srcOffset, j = dstOffset, end = srcOffset + length; i < end; i++) {
+			int masked = src[i] & 0xff;
+			dst[j++] = DIGITS[masked >> 4];
+			dst[j++] = DIGITS[masked & 0xf];
+		}
+		return length * 2;
+	}
+
+	/**
+	 * Encodes all of the remaining bytes of the source buffer into the
+	 * destination buffer. The positions of both buffers are advanced.
+	 *
+	 * @param src
+	 *            the buffer holding the bytes
+	 * @param dst
+	 *            the buffer receiving the digits
+	 * @throws BufferOverflowException
+	 *             if the destination buffer is too small
+	 */
+	public static void encode(ByteBuffer src, CharBuffer dst) {
+		int length = src.remaining();
+		if (dst.remaining() < length * 2L) {
+			throw new BufferOverflowException();
+		}
+
+		if (src.hasArray() && dst.hasArray()) {
+			encode(src.array(), src.arrayOffset() + src.position(), length, dst.array(),
+					dst.arrayOffset() + dst.position());
+			src.position(src.position() + length);
+			dst.position(dst.position() + length * 2);
+			return;
+		}
+		while (src.hasRemaining()) {
+			int masked = src.get() & 0xff;
+			dst.put(DIGITS[masked >> 4]);
+			dst.put(DIGITS[masked & 0xf]);
 		}
-		
-		return sb.toString();
 	}
 }
@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.hw07.shell;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.SortedMap;
 
@@ -41,6 +43,46 @@ public interface Environment {
 	 */
 	void writeln(String text) throws ShellIOException;
 
+	/**
+	 * Writes a part of a character array on the output stream.
+	 * 
+	 * @param cbuf
+	 *            the array holding the characters to be written
+	 * @param offset
+	 *            the index of the first character to be written
+	 * @param length
+	 *            the number of characters to be written
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	void write(char[] cbuf, int offset, int length) throws ShellIOException;
+
+	/**
+	 * Writes raw bytes on the output stream. The bytes must be encoded in the
+	 * charset returned by {@link #getCharset()}. The buffer's position is
+	 * advanced past the written bytes.
+	 * 
+	 * @param bytes
+	 *            the bytes to be written
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	void write(ByteBuffer bytes) throws ShellIOException;
+
+	/**
+	 * @return the charset used for encoding the output stream
+	 */
+	Charset getCharset();
+
+	/**
+	 * Writes any buffered output to the output stream. The output may be
+	 * buffered until this method is called.
+	 * 
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	void flush() throws ShellIOException;
+
 	/**
 	 * @return the list of the shell's available commands
 	 */
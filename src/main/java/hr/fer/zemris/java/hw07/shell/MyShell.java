@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.hw07.shell;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -30,7 +32,7 @@ public class MyShell {
 	 */
 	public static void main(String[] args) {
 		Scanner sc = new Scanner(System.in);
-		Environment env = new ShellEnvironment(sc);
+		Environment env = new ShellEnvironment(sc, OutputSink.console());
 		ShellStatus status = ShellStatus.CONTINUE;
 
 		StringBuilder sb = new StringBuilder();
@@ -40,6 +42,7 @@ public class MyShell {
 		while (status == ShellStatus.CONTINUE) {
 			
 			env.write(env.getPromptSymbol().toString() + " ");
+			env.flush();
 			String line = env.readLine().trim();
 			sb.append(line);
 			if (line.equals("exit")) {
@@ -69,8 +72,10 @@ public class MyShell {
 				}
 			}
 			sb.setLength(0); // reset the builder
+			env.flush();
 		}
 
+		env.flush();
 		sc.close();
 
 	}
@@ -106,6 +111,11 @@ public class MyShell {
 		 */
 		private Scanner scanner;
 
+		/**
+		 * The buffered destination of the shell's output.
+		 */
+		private OutputSink output;
+
 		/**
 		 * The current working directory.
 		 */
@@ -121,11 +131,14 @@ public class MyShell {
 		 * 
 		 * @param sc
 		 *            the scanner instance used for reading lines from the user
+		 * @param output
+		 *            the buffered destination of the shell's output
 		 */
-		public ShellEnvironment(Scanner sc) {
+		public ShellEnvironment(Scanner sc, OutputSink output) {
 			initCommands();
 			initSymbols();
 			this.scanner = sc;
+			this.output = output;
 			this.currentDirectory = Paths.get(".").normalize().toAbsolutePath();
 			sharedData = new HashMap<>();
 		}
@@ -170,6 +183,7 @@ public class MyShell {
 
 		@Override
 		public String readLine() throws ShellIOException {
+			flush(); // the user must see the prompt before typing
 			try {
 				return scanner.nextLine();
 			} catch (RuntimeException e) {
@@ -180,22 +194,33 @@ public class MyShell {
 
 		@Override
 		public void write(String text) throws ShellIOException {
-			try {
-				System.out.print(text);
-			} catch (RuntimeException e) {
-				throw new ShellIOException(
-						"An exception occurred during writing: ", e.getCause());
-			}
+			output.write(text);
 		}
 
 		@Override
 		public void writeln(String text) throws ShellIOException {
-			try {
-				System.out.println(text);
-			} catch (RuntimeException e) {
-				throw new ShellIOException(
-						"An exception occurred during writing: ", e.getCause());
-			}
+			output.writeln(text);
+		}
+
+		@Override
+		public void write(char[] cbuf, int offset, int length)
+				throws ShellIOException {
+			output.write(cbuf, offset, length);
+		}
+
+		@Override
+		public void write(ByteBuffer bytes) throws ShellIOException {
+			output.write(bytes);
+		}
+
+		@Override
+		public Charset getCharset() {
+			return output.getCharset();
+		}
+
+		@Override
+		public void flush() throws ShellIOException {
+			output.flush();
 		}
 
 		@Override
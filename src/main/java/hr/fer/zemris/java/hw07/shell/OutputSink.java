@@ -0,0 +1,228 @@
+package hr.fer.zemris.java.hw07.shell;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A buffered destination for the shell's output. Written characters are
+ * collected in a large buffer, and are encoded and written to the underlying
+ * channel only when the buffer fills up or when {@link #flush()} is called.
+ * This way, commands which produce a lot of output are not slowed down by a
+ * system call per written line.
+ * <p>
+ * The sink is not thread-safe.
+ *
+ * @author 0036502252
+ *
+ */
+public class OutputSink {
+	/**
+	 * The default number of buffered characters.
+	 */
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+	/**
+	 * The line separator, appended by {@link #writeln(String)}.
+	 */
+	private static final String NEWLINE = System.lineSeparator();
+
+	/**
+	 * The channel to which the output is written.
+	 */
+	private WritableByteChannel channel;
+	/**
+	 * The charset of the output.
+	 */
+	private Charset charset;
+	/**
+	 * Encodes the buffered characters.
+	 */
+	private CharsetEncoder encoder;
+	/**
+	 * The buffered characters.
+	 */
+	private char[] chars;
+	/**
+	 * The number of buffered characters.
+	 */
+	private int position;
+	/**
+	 * Holds the encoded characters before they are written to the channel.
+	 */
+	private ByteBuffer bytes;
+
+	/**
+	 * Constructs a new {@link OutputSink}.
+	 *
+	 * @param channel
+	 *            the channel to which the output is written
+	 * @param charset
+	 *            the charset of the output
+	 * @param capacity
+	 *            the number of buffered characters
+	 */
+	public OutputSink(WritableByteChannel channel, Charset charset,
+			int capacity) {
+		this.channel = channel;
+		this.charset = charset;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = new char[capacity];
+		this.bytes = ByteBuffer.allocateDirect(
+				(int) Math.ceil(capacity * encoder.maxBytesPerChar()));
+	}
+
+	/**
+	 * Constructs a new {@link OutputSink} which writes to the standard output
+	 * using the platform's default charset.
+	 *
+	 * @return the new sink
+	 */
+	public static OutputSink console() {
+		return new OutputSink(
+				new FileOutputStream(FileDescriptor.out).getChannel(),
+				Charset.defaultCharset(), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @return the charset of the output
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Writes a string.
+	 *
+	 * @param text
+	 *            the string to be written
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	public void write(String text) throws ShellIOException {
+		int length = text.length();
+		for (int done = 0; done < length;) {
+			if (position == chars.length) {
+				flush();
+			}
+			int n = Math.min(length - done, chars.length - position);
+			text.getChars(done, done + n, chars, position);
+			position += n;
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes a string followed by a line separator.
+	 *
+	 * @param text
+	 *            the string to be written
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	public void writeln(String text) throws ShellIOException {
+		write(text);
+		write(NEWLINE);
+	}
+
+	/**
+	 * Writes a part of a character array.
+	 *
+	 * @param cbuf
+	 *            the array holding the characters
+	 * @param offset
+	 *            the index of the first written character
+	 * @param length
+	 *            the number of written characters
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	public void write(char[] cbuf, int offset, int length)
+			throws ShellIOException {
+		for (int done = 0; done < length;) {
+			if (position == chars.length) {
+				flush();
+			}
+			int n = Math.min(length - done, chars.length - position);
+			System.arraycopy(cbuf, offset + done, chars, position, n);
+			position += n;
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes raw bytes, which are expected to be encoded in the charset of the
+	 * output. The buffered characters are written first. The buffer's
+	 * position is advanced past the written bytes.
+	 *
+	 * @param raw
+	 *            the bytes to be written
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	public void write(ByteBuffer raw) throws ShellIOException {
+		flush();
+		try {
+			while (raw.hasRemaining()) {
+				channel.write(raw);
+			}
+		} catch (IOException e) {
+			throw new ShellIOException("An exception occurred during writing: ",
+					e);
+		}
+	}
+
+	/**
+	 * Encodes the buffered characters and writes them to the underlying
+	 * channel. A surrogate pair split by the end of the buffer is kept until
+	 * the rest of the pair is written.
+	 *
+	 * @throws ShellIOException
+	 *             in case writing goes awry
+	 */
+	public void flush() throws ShellIOException {
+		if (position == 0) {
+			return;
+		}
+
+		CharBuffer in = CharBuffer.wrap(chars, 0, position);
+		try {
+			while (true) {
+				CoderResult result = encoder.encode(in, bytes, false);
+				drain();
+				if (result.isUnderflow()) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new ShellIOException("An exception occurred during writing: ",
+					e);
+		}
+
+		int remaining = in.remaining();
+		System.arraycopy(chars, in.position(), chars, 0, remaining);
+		position = remaining;
+	}
+
+	/**
+	 * Writes the encoded bytes to the channel.
+	 *
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+}
@@ -1,6 +1,8 @@
 package hr.fer.zemris.java.hw07.shell;
 /**
- * A runtime exception used in the {@link ShellCommandParser} class.
+ * A runtime exception used in the {@link ShellCommandParser} class, and by the
+ * parser of name expressions. It may carry the position in the input at which
+ * the error was found.
  * @author 0036502252
  *
  */
@@ -9,6 +11,11 @@ public class ParserException extends RuntimeException {
      * Auto-generated serial ID for this exception.
 	 */
 	private static final long serialVersionUID = 4185867920555342254L;
+	/**
+	 * The position in the input at which the error was found, or -1 if it is
+	 * not known.
+	 */
+	private final int position;
 
 	
     /** Constructs a new SmartScriptParserException with {@code null} as its
@@ -16,6 +23,7 @@ public class ParserException extends RuntimeException {
      */
     public ParserException() {
         super();
+        this.position = -1;
     }
 
     /** Constructs a new SmartScriptParserException with the specified detail message.
@@ -23,6 +31,7 @@ public class ParserException extends RuntimeException {
      */
     public ParserException(String message) {
         super(message);
+        this.position = -1;
     }
 
     /**
@@ -32,6 +41,7 @@ public class ParserException extends RuntimeException {
      */
     public ParserException(String message, Throwable cause) {
         super(message, cause);
+        this.position = -1;
     }
 
     /** Constructs a new SmartScriptParserException with the specified cause.
@@ -39,6 +49,26 @@ public class ParserException extends RuntimeException {
      */
     public ParserException(Throwable cause) {
         super(cause);
+        this.position = -1;
+    }
+
+    /**
+     * Constructs a new exception for an error at the given position. The
+     * position is appended to the detail message.
+     * @param  message the detail message, without the position
+     * @param  position the position in the input at which the error was found
+     */
+    public ParserException(String message, int position) {
+        super(message + " (at position " + position + ")");
+        this.position = position;
+    }
+
+    /**
+     * @return the position in the input at which the error was found, or -1
+     *         if it is not known
+     */
+    public int getPosition() {
+        return position;
     }
 
 
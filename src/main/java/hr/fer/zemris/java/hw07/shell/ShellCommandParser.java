@@ -1,67 +1,209 @@
 package hr.fer.zemris.java.hw07.shell;
 
-import java.util.ArrayList;
+import java.nio.CharBuffer;
 import java.util.Objects;
 
 /**
- * Parses a command from the shell. Implemented as a 'lazy' lexer which reads a
- * string character by character.
- * 
+ * Parses the arguments of a shell command. The input is split into tokens in
+ * a single pass: tokens are separated by whitespace, and a token starting with
+ * a quotation mark extends up to the closing quotation mark, so it may contain
+ * whitespace. After the closing quotation mark, either no more characters or
+ * a whitespace must follow.
+ * <p>
+ * In both kinds of tokens, a backslash followed by a quotation mark, a
+ * backslash or a whitespace stands for that character; any other backslash is
+ * kept as it is, so paths like <code>C:\dir\file</code> need no escaping.
+ * <p>
+ * A parser can be reused for many inputs by calling
+ * {@link #reset(CharSequence)} and {@link #tokenize()}; its internal buffers
+ * only grow when an input is longer than all of the previous ones. The tokens
+ * are available as offsets into the input and as views of their unescaped
+ * values.
+ *
  * @author 0036502252
  *
  */
 public class ShellCommandParser {
 	/**
-	 * The input string converted to a char array.
+	 * The number of ints describing a single token in {@link #bounds}.
+	 */
+	private static final int FIELDS = 4;
+
+	/**
+	 * The input being parsed.
 	 */
-	private char[] data;
+	private CharSequence input;
 	/**
-	 * The current index of the parser.
+	 * The unescaped values of all of the tokens, one after another.
 	 */
-	private int currentIndex;
+	private char[] values = new char[64];
 	/**
-	 * The length of the data array. Used solely for convenience.
+	 * For each token, its start and end in the input, and the start and end of
+	 * its value in {@link #values}.
 	 */
-	private int end;
+	private int[] bounds = new int[8 * FIELDS];
 	/**
-	 * The arguments which will be returned as an array.
+	 * The number of tokens.
 	 */
-	private ArrayList<String> arguments;
+	private int count;
+
+	/**
+	 * Constructs a new parser without an input. Use
+	 * {@link #reset(CharSequence)} before tokenizing.
+	 */
+	public ShellCommandParser() {
+		this.input = "";
+	}
 
 	/**
 	 * Initializes the parser with the string to be parsed.
-	 * 
+	 *
 	 * @param str
 	 *            the string to be parsed
 	 */
 	public ShellCommandParser(String str) {
-		Objects.requireNonNull(str);
-		data = str.trim().toCharArray();
-		end = data.length;
-		currentIndex = 0;
-		arguments = new ArrayList<>();
+		reset(str);
 	}
 
 	/**
-	 * Parses the path according to the shell's regulations.
-	 * 
-	 * @return
+	 * Sets a new input, discarding the tokens of the previous one.
+	 *
+	 * @param input
+	 *            the input to be parsed
+	 * @return this parser
 	 */
-	public String[] parsePath() {
-		while (currentIndex < end) {
-			if(Character.isWhitespace(data[currentIndex])) currentIndex++;
-			
-			if (data[currentIndex] == '\"') {
-				quotationMethod();
-			} else {
-				normalMethod();
+	public ShellCommandParser reset(CharSequence input) {
+		this.input = Objects.requireNonNull(input);
+		this.count = 0;
+		return this;
+	}
+
+	/**
+	 * Splits the input into tokens.
+	 *
+	 * @return the number of tokens
+	 * @throws ParserException
+	 *             if a quoted token is not terminated, or is followed by
+	 *             something other than a whitespace
+	 */
+	public int tokenize() {
+		int length = input.length();
+		if (values.length < length) {
+			values = new char[Math.max(length, values.length * 2)];
+		}
+
+		count = 0;
+		int valueEnd = 0;
+		int i = 0;
+		while (true) {
+			while (i < length && Character.isWhitespace(input.charAt(i))) {
+				i++;
 			}
+			if (i == length) {
+				return count;
+			}
+
+			int start = i;
+			int valueStart = valueEnd;
+			boolean quoted = input.charAt(i) == '"';
+			if (quoted) {
+				i++;
+			}
+
+			while (true) {
+				if (i == length) {
+					if (quoted) {
+						throw new ParserException(
+								"Unterminated quotation mark", start);
+					}
+					break;
+				}
+
+				char c = input.charAt(i);
+				if (quoted ? c == '"' : Character.isWhitespace(c)) {
+					break;
+				}
+				if (c == '\\' && i + 1 < length
+						&& isEscapable(input.charAt(i + 1))) {
+					c = input.charAt(++i);
+				}
+				values[valueEnd++] = c;
+				i++;
+			}
+
+			if (quoted) {
+				i++; // skip the closing quotation mark
+				if (i < length && !Character.isWhitespace(input.charAt(i))) {
+					throw new ParserException(
+							"Illegal sequence after a quotation mark", i);
+				}
+			}
+			addToken(start, i, valueStart, valueEnd);
 		}
-		if (data.length == 0) {
+	}
+
+	/**
+	 * @return the number of tokens found by the last call of
+	 *         {@link #tokenize()}
+	 */
+	public int getTokenCount() {
+		return count;
+	}
+
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the offset of the token's first character (or its opening
+	 *         quotation mark) in the input
+	 */
+	public int getTokenStart(int index) {
+		return bounds[checkIndex(index) * FIELDS];
+	}
+
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the offset after the token's last character (or its closing
+	 *         quotation mark) in the input
+	 */
+	public int getTokenEnd(int index) {
+		return bounds[checkIndex(index) * FIELDS + 1];
+	}
+
+	/**
+	 * Gets the unescaped value of a token, without copying it. The view is
+	 * valid until the parser is used for the next input.
+	 *
+	 * @param index
+	 *            the index of a token
+	 * @return the value of the token
+	 */
+	public CharSequence getToken(int index) {
+		int offset = checkIndex(index) * FIELDS;
+		return CharBuffer.wrap(values, bounds[offset + 2],
+				bounds[offset + 3] - bounds[offset + 2]);
+	}
+
+	/**
+	 * Parses the path according to the shell's regulations.
+	 *
+	 * @return the unescaped tokens, or null if the input contains no tokens
+	 * @throws ParserException
+	 *             if a quoted token is not terminated, or is followed by
+	 *             something other than a whitespace
+	 */
+	public String[] parsePath() {
+		if (tokenize() == 0) {
 			return null;
 		}
-		return arguments.stream().map(s->s.trim()).toArray(String[]::new);
-		
+
+		String[] tokens = new String[count];
+		for (int i = 0; i < count; i++) {
+			int offset = i * FIELDS;
+			tokens[i] = new String(values, bounds[offset + 2],
+					bounds[offset + 3] - bounds[offset + 2]);
+		}
+		return tokens;
 	}
 
 	// =========================================================================
@@ -69,54 +211,52 @@ public class ShellCommandParser {
 	// =========================================================================
 
 	/**
-	 * The parser is in this mode when no quotation mark is present. No spaces
-	 * are allowed.
+	 * Stores the bounds of a new token.
+	 *
+	 * @param start
+	 *            the start of the token in the input
+	 * @param end
+	 *            the end of the token in the input
+	 * @param valueStart
+	 *            the start of the token's value
+	 * @param valueEnd
+	 *            the end of the token's value
 	 */
-	private void normalMethod() {
-		StringBuilder sb = new StringBuilder();
-
-		while (currentIndex < end
-				&& !Character.isWhitespace(data[currentIndex])) {
-			sb.append(data[currentIndex++]);
+	private void addToken(int start, int end, int valueStart, int valueEnd) {
+		int offset = count * FIELDS;
+		if (offset == bounds.length) {
+			int[] grown = new int[bounds.length * 2];
+			System.arraycopy(bounds, 0, grown, 0, bounds.length);
+			bounds = grown;
 		}
-
-		arguments.add(sb.append(" ").toString());
-		sb.setLength(0);
-		currentIndex++; // skip the whitespace separating multiple paths
-
+		bounds[offset] = start;
+		bounds[offset + 1] = end;
+		bounds[offset + 2] = valueStart;
+		bounds[offset + 3] = valueEnd;
+		count++;
 	}
 
 	/**
-	 * The parser is in this mode when a quotation mark is present. Spaces
-	 * and escaping are allowed.
+	 * @param index
+	 *            the index of a token
+	 * @return the index
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such token
 	 */
-	private void quotationMethod() {
-		StringBuilder sb = new StringBuilder();
-		currentIndex++; // skip the first " character
-		while (currentIndex < end && data[currentIndex] != '\"') {
-			if (data[currentIndex] == '\\') {
-				if (currentIndex < end && (data[currentIndex + 1] == '\"'
-						|| data[currentIndex + 1] == '\\')) {
-					currentIndex++; // skip the first '\' symbol
-				}
-			}
-			sb.append(data[currentIndex++]);
+	private int checkIndex(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException(
+					"Invalid token index: " + index);
 		}
+		return index;
+	}
 
-		currentIndex++; // skip the terminating " mark
-
-		arguments.add(sb.toString()); //add to the list of arguments
-		sb.setLength(0);
-
-		/*
-		 * "After the ending double-quote, either no more characters must be
-		 * present or at least one space character must be present: strings like
-		 * "C:\fi le".txt are invalid and argument parser should report an
-		 * error."
-		 */
-		if (currentIndex < end
-				&& !Character.isWhitespace(data[currentIndex])) {
-			throw new ParserException("Illegal sequence!");
-		}
+	/**
+	 * @param c
+	 *            the character following a backslash
+	 * @return true if the backslash escapes the character
+	 */
+	private static boolean isEscapable(char c) {
+		return c == '"' || c == '\\' || Character.isWhitespace(c);
 	}
 }
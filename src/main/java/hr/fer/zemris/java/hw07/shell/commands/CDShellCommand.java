@@ -45,7 +45,7 @@ public class CDShellCommand implements ShellCommand {
 			return ShellStatus.CONTINUE;
 		}
 
-		Path path = env.getCurrentDirectory().resolve(str.trim());
+		Path path = env.getCurrentDirectory().resolve(str);
 
 		env.setCurrentDirectory(path);
 
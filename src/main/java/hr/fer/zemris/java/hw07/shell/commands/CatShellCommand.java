@@ -1,29 +1,70 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
 import hr.fer.zemris.java.hw07.shell.ShellStatus;
 
 /**
- * Prints the content of a textual file.
+ * Prints the content of one or more textual files.
  * 
  * @author 0036502252
  *
  */
 public class CatShellCommand implements ShellCommand {
+	/**
+	 * The number of bytes read at once from files which are not mapped.
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+	/**
+	 * Files larger than this are mapped into memory instead of being read.
+	 */
+	private static final long MAP_THRESHOLD = 1024 * 1024;
+	/**
+	 * The maximum number of bytes mapped into memory at once.
+	 */
+	private static final long MAP_SIZE = 64 * 1024 * 1024;
+	/**
+	 * The number of threads reading files when multiple files are printed.
+	 */
+	private static final int WORKERS = 4;
+	/**
+	 * The number of chunks a worker may read ahead of the output for a single
+	 * file.
+	 */
+	private static final int QUEUE_CAPACITY = 8;
+	/**
+	 * The option which sets the charset of the files.
+	 */
+	private static final String CHARSET_OPTION = "--charset";
+	/**
+	 * The characters which mark an argument as a glob pattern.
+	 */
+	private static final String GLOB_CHARS = "*?[{";
 	/**
 	 * The name of this command.
 	 */
@@ -32,6 +73,11 @@ public class CatShellCommand implements ShellCommand {
 	 * The description of this command.
 	 */
 	List<String> description;
+	/**
+	 * The streamer used for the most recently printed single file, reused
+	 * between calls.
+	 */
+	private FileStreamer streamer;
 
 	/**
 	 * Constructs a new {@link CatShellCommand}.
@@ -44,56 +90,79 @@ public class CatShellCommand implements ShellCommand {
 		list.add("The first argument is path to some file and is mandatory.");
 		list.add(
 				"The second argument charset name that should be used to interpret chars from bytes.");
+		list.add("Multiple files and glob patterns (e.g. *.log) may be given;"
+				+ " they are read in parallel and printed in order.");
+		list.add("The charset may also be given using the option "
+				+ CHARSET_OPTION + ".");
 		description = Collections.unmodifiableList(list);
 	}
 
 	/**
-	 * Takes one or two arguments. The first argument is path to some file and
-	 * is mandatory. The second argument is charset name that should be used to
-	 * interpret chars from bytes. If not provided, a default platform charset
-	 * should be used.
+	 * Takes one or more paths, optionally followed by a charset name. The paths
+	 * may contain glob patterns in their last element. The charset name is used
+	 * to interpret chars from bytes; if not provided, a default platform
+	 * charset is used.
 	 */
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String[] args = null;
-		Path p = null;
+		CommandOptions options;
 		try {
-			args = new ShellCommandParser(arguments).parsePath();
-			p = env.getCurrentDirectory().resolve(args[0].trim());
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					CHARSET_OPTION);
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
-		Charset charset = null;
+		List<String> args = new ArrayList<>(options.getPositional());
+		if (args.isEmpty()) {
+			env.writeln("Error! \"cat\" command expects at least 1 argument.");
+			return ShellStatus.CONTINUE;
+		}
 
-		if (args.length == 1) {
-			charset = Charset.defaultCharset();
-		} else if (args.length == 2) {
-			try {
-				charset = Charset.forName(args[1].trim());
-			} catch (IllegalCharsetNameException
-					| UnsupportedCharsetException ex) {
-				env.writeln("Illegal or unupported charset!");
-				return ShellStatus.CONTINUE;
-			}
+		String charsetName = options.getString(CHARSET_OPTION, null);
+		if (charsetName == null && args.size() > 1
+				&& isCharsetName(env, args.get(args.size() - 1))) {
+			charsetName = args.remove(args.size() - 1);
+		}
 
-		} else {
-			env.writeln(
-					"Error! \"cat\" command is defined for 1 or 2 arguments.");
+		Charset charset;
+		try {
+			charset = charsetName == null ? Charset.defaultCharset()
+					: Charset.forName(charsetName);
+		} catch (IllegalCharsetNameException
+				| UnsupportedCharsetException ex) {
+			env.writeln("Illegal or unupported charset!");
 			return ShellStatus.CONTINUE;
 		}
 
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(
-				new BufferedInputStream(new FileInputStream(p.toString())),
-				charset))) {
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				env.writeln(line);
+		List<Path> files = new ArrayList<>();
+		try {
+			for (String arg : args) {
+				expand(env.getCurrentDirectory(), arg, files);
 			}
+		} catch (InvalidPathException | IOException ex) {
+			env.writeln("Invalid path: " + ex.getMessage());
+			return ShellStatus.CONTINUE;
+		}
 
-		} catch (IOException ex) {
-			env.writeln("Cannot read from file!");
+		if (files.isEmpty()) {
+			env.writeln("No files match the given paths.");
+		} else if (files.size() == 1) {
+			if (streamer == null || !streamer.charset.equals(charset)) {
+				streamer = new FileStreamer(charset, env.getCharset(), true);
+			}
+			try {
+				streamer.stream(files.get(0), new EnvironmentSink(env));
+			} catch (IOException ex) {
+				env.writeln("Cannot read from file!");
+			}
+		} else {
+			concatenate(env, files, charset);
 		}
 
 		return ShellStatus.CONTINUE;
@@ -109,4 +178,490 @@ public class CatShellCommand implements ShellCommand {
 		return description;
 	}
 
+	/**
+	 * Prints multiple files in the given order. The files are read and decoded
+	 * by a small pool of workers, each of which may read only a bounded number
+	 * of chunks ahead, while the chunks are written to the environment by the
+	 * calling thread one file after another.
+	 * 
+	 * @param env
+	 *            the environment used for output
+	 * @param files
+	 *            the files to be printed
+	 * @param charset
+	 *            the charset of the files
+	 */
+	private static void concatenate(Environment env, List<Path> files,
+			Charset charset) {
+		ExecutorService pool = Executors
+				.newFixedThreadPool(Math.min(WORKERS, files.size()));
+		try {
+			// the pool runs the tasks in order, so the file being written is
+			// always being read as well
+			List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+			for (Path file : files) {
+				BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(
+						QUEUE_CAPACITY);
+				queues.add(queue);
+				pool.execute(() -> readFile(file, charset, env.getCharset(),
+						queue));
+			}
+
+			for (int i = 0; i < files.size(); i++) {
+				BlockingQueue<Chunk> queue = queues.get(i);
+				while (true) {
+					Chunk chunk = queue.take();
+					if (chunk == Chunk.END) {
+						break;
+					} else if (chunk.chars != null) {
+						env.write(chunk.chars, 0, chunk.chars.length);
+					} else if (chunk.bytes != null) {
+						env.write(chunk.bytes);
+					} else {
+						env.writeln("Cannot read from file: " + files.get(i));
+						break;
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads a file into a queue of chunks. Executed by the workers of
+	 * {@link #concatenate(Environment, List, Charset)}.
+	 * 
+	 * @param file
+	 *            the file to be read
+	 * @param charset
+	 *            the charset of the file
+	 * @param outputCharset
+	 *            the charset of the output
+	 * @param queue
+	 *            the queue to which the chunks are added
+	 */
+	private static void readFile(Path file, Charset charset,
+			Charset outputCharset, BlockingQueue<Chunk> queue) {
+		try {
+			try {
+				new FileStreamer(charset, outputCharset, false).stream(file,
+						new QueueSink(queue));
+				queue.put(Chunk.END);
+			} catch (InterruptedIOException ex) {
+				return; // the output was abandoned
+			} catch (IOException ex) {
+				queue.put(Chunk.ERROR);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks if the last argument should be treated as a charset name: it
+	 * must name a supported charset and must not name an existing file.
+	 * 
+	 * @param env
+	 *            the environment of the shell
+	 * @param arg
+	 *            the argument to be checked
+	 * @return true if the argument is a charset name
+	 */
+	private static boolean isCharsetName(Environment env, String arg) {
+		try {
+			return Charset.isSupported(arg)
+					&& !Files.exists(env.getCurrentDirectory().resolve(arg));
+		} catch (IllegalCharsetNameException | InvalidPathException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the files denoted by an argument to the list. If the last element
+	 * of the argument is a glob pattern, all matching files are added, sorted
+	 * by their names.
+	 * 
+	 * @param dir
+	 *            the directory against which the argument is resolved
+	 * @param arg
+	 *            the argument
+	 * @param files
+	 *            the list of files
+	 * @throws IOException
+	 *             if the directory of a glob pattern can not be listed
+	 */
+	private static void expand(Path dir, String arg, List<Path> files)
+			throws IOException {
+		Path path = dir.resolve(arg);
+		String pattern = path.getFileName() == null ? ""
+				: path.getFileName().toString();
+
+		boolean glob = false;
+		for (int i = 0; i < pattern.length() && !glob; i++) {
+			glob = GLOB_CHARS.indexOf(pattern.charAt(i)) >= 0;
+		}
+		if (!glob) {
+			files.add(path);
+			return;
+		}
+
+		List<Path> matches = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files
+				.newDirectoryStream(path.getParent(), pattern)) {
+			for (Path match : stream) {
+				if (Files.isRegularFile(match)) {
+					matches.add(match);
+				}
+			}
+		}
+		Collections.sort(matches);
+		files.addAll(matches);
+	}
+
+	/**
+	 * The destination of the chunks of a file.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	interface ChunkSink {
+		/**
+		 * Accepts decoded characters.
+		 * 
+		 * @param cbuf
+		 *            the array holding the characters, which may be reused
+		 *            after this method returns
+		 * @param offset
+		 *            the index of the first character
+		 * @param length
+		 *            the number of characters
+		 * @throws IOException
+		 *             if the characters can not be accepted
+		 */
+		void write(char[] cbuf, int offset, int length) throws IOException;
+
+		/**
+		 * Accepts raw bytes, encoded in the charset of the output.
+		 * 
+		 * @param bytes
+		 *            the bytes, which may be reused after this method returns
+		 * @throws IOException
+		 *             if the bytes can not be accepted
+		 */
+		void write(ByteBuffer bytes) throws IOException;
+	}
+
+	/**
+	 * A {@link ChunkSink} which writes directly to the environment.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class EnvironmentSink implements ChunkSink {
+		/**
+		 * The environment used for output.
+		 */
+		private Environment env;
+
+		/**
+		 * Constructs a new {@link EnvironmentSink}.
+		 * 
+		 * @param env
+		 *            the environment used for output
+		 */
+		EnvironmentSink(Environment env) {
+			this.env = env;
+		}
+
+		@Override
+		public void write(char[] cbuf, int offset, int length) {
+			env.write(cbuf, offset, length);
+		}
+
+		@Override
+		public void write(ByteBuffer bytes) {
+			env.write(bytes);
+		}
+	}
+
+	/**
+	 * A {@link ChunkSink} which copies the chunks into a bounded queue,
+	 * blocking while the queue is full.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class QueueSink implements ChunkSink {
+		/**
+		 * The queue to which the chunks are added.
+		 */
+		private BlockingQueue<Chunk> queue;
+
+		/**
+		 * Constructs a new {@link QueueSink}.
+		 * 
+		 * @param queue
+		 *            the queue to which the chunks are added
+		 */
+		QueueSink(BlockingQueue<Chunk> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void write(char[] cbuf, int offset, int length)
+				throws IOException {
+			if (length > 0) {
+				put(new Chunk(Arrays.copyOfRange(cbuf, offset, offset + length),
+						null));
+			}
+		}
+
+		@Override
+		public void write(ByteBuffer bytes) throws IOException {
+			if (bytes.hasRemaining()) {
+				ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+				copy.put(bytes).flip();
+				put(new Chunk(null, copy));
+			}
+		}
+
+		/**
+		 * Adds a chunk to the queue.
+		 * 
+		 * @param chunk
+		 *            the chunk to be added
+		 * @throws InterruptedIOException
+		 *             if the thread is interrupted while waiting
+		 */
+		private void put(Chunk chunk) throws InterruptedIOException {
+			try {
+				queue.put(chunk);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/**
+	 * A part of a file, either decoded characters or raw bytes.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class Chunk {
+		/**
+		 * Marks the end of a file.
+		 */
+		static final Chunk END = new Chunk(null, null);
+		/**
+		 * Marks a file which could not be read.
+		 */
+		static final Chunk ERROR = new Chunk(null, null);
+		/**
+		 * The decoded characters, or null.
+		 */
+		final char[] chars;
+		/**
+		 * The raw bytes, or null.
+		 */
+		final ByteBuffer bytes;
+
+		/**
+		 * Constructs a new {@link Chunk}.
+		 * 
+		 * @param chars
+		 *            the decoded characters, or null
+		 * @param bytes
+		 *            the raw bytes, or null
+		 */
+		Chunk(char[] chars, ByteBuffer bytes) {
+			this.chars = chars;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Reads files and passes their contents to a {@link ChunkSink} in large
+	 * chunks. If the charset of the file equals the charset of the output, the
+	 * bytes are passed through without decoding; otherwise they are decoded
+	 * using a reusable decoder. Line terminators are passed on as they are
+	 * found in the file.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class FileStreamer {
+		/**
+		 * The charset of the files.
+		 */
+		final Charset charset;
+		/**
+		 * True if the bytes are passed through without decoding.
+		 */
+		private boolean passThrough;
+		/**
+		 * True if large files may be mapped into memory.
+		 */
+		private boolean mapping;
+		/**
+		 * The decoder of the charset.
+		 */
+		private CharsetDecoder decoder;
+		/**
+		 * The reusable buffer of decoded characters.
+		 */
+		private CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+
+		/**
+		 * Constructs a new {@link FileStreamer}.
+		 * 
+		 * @param charset
+		 *            the charset of the files
+		 * @param outputCharset
+		 *            the charset of the output
+		 * @param mapping
+		 *            true if large files may be mapped into memory
+		 */
+		FileStreamer(Charset charset, Charset outputCharset, boolean mapping) {
+			this.charset = charset;
+			this.passThrough = charset.equals(outputCharset);
+			this.mapping = mapping;
+			this.decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		/**
+		 * Passes the contents of a file to the sink.
+		 * 
+		 * @param file
+		 *            the file
+		 * @param sink
+		 *            the destination of the chunks
+		 * @throws IOException
+		 *             in case reading goes awry
+		 */
+		void stream(Path file, ChunkSink sink) throws IOException {
+			try (FileChannel channel = FileChannel.open(file,
+					StandardOpenOption.READ)) {
+				if (passThrough) {
+					copyBytes(channel, sink);
+				} else {
+					decoder.reset();
+					decode(channel, sink);
+				}
+			}
+		}
+
+		/**
+		 * Passes the bytes of a file to the sink without decoding them.
+		 * 
+		 * @param channel
+		 *            the channel of the file
+		 * @param sink
+		 *            the destination of the chunks
+		 * @throws IOException
+		 *             in case reading goes awry
+		 */
+		private void copyBytes(FileChannel channel, ChunkSink sink)
+				throws IOException {
+			long size = channel.size();
+			if (mapping && size > MAP_THRESHOLD) {
+				for (long position = 0; position < size; position += MAP_SIZE) {
+					sink.write(channel.map(FileChannel.MapMode.READ_ONLY,
+							position, Math.min(MAP_SIZE, size - position)));
+				}
+				return;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				sink.write(buffer);
+				buffer.clear();
+			}
+		}
+
+		/**
+		 * Decodes a file and passes the decoded characters to the sink.
+		 * 
+		 * @param channel
+		 *            the channel of the file
+		 * @param sink
+		 *            the destination of the chunks
+		 * @throws IOException
+		 *             in case reading goes awry
+		 */
+		private void decode(FileChannel channel, ChunkSink sink)
+				throws IOException {
+			long size = channel.size();
+			if (mapping && size > MAP_THRESHOLD) {
+				long position = 0;
+				while (position < size) {
+					ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+							position, Math.min(MAP_SIZE, size - position));
+					boolean last = position + in.limit() == size;
+					decodeChunk(in, last, sink);
+					// bytes of a character split by the end of the chunk are
+					// mapped again as the start of the next chunk
+					position += last ? in.limit() : in.position();
+				}
+			} else {
+				ByteBuffer in = ByteBuffer.allocate(BLOCK_SIZE);
+				while (channel.read(in) != -1) {
+					in.flip();
+					decodeChunk(in, false, sink);
+					in.compact();
+				}
+				in.flip();
+				decodeChunk(in, true, sink);
+			}
+		}
+
+		/**
+		 * Decodes a chunk of bytes and passes the decoded characters to the
+		 * sink.
+		 * 
+		 * @param in
+		 *            the bytes to be decoded
+		 * @param endOfInput
+		 *            true if this is the last chunk of the file
+		 * @param sink
+		 *            the destination of the chunks
+		 * @throws IOException
+		 *             if the sink does not accept the characters
+		 */
+		private void decodeChunk(ByteBuffer in, boolean endOfInput,
+				ChunkSink sink) throws IOException {
+			while (true) {
+				CoderResult result = decoder.decode(in, chars, endOfInput);
+				writeChars(sink);
+				if (result.isUnderflow()) {
+					break;
+				}
+			}
+
+			if (endOfInput) {
+				decoder.flush(chars);
+				writeChars(sink);
+			}
+		}
+
+		/**
+		 * Passes the decoded characters to the sink and clears the buffer.
+		 * 
+		 * @param sink
+		 *            the destination of the chunks
+		 * @throws IOException
+		 *             if the sink does not accept the characters
+		 */
+		private void writeChars(ChunkSink sink) throws IOException {
+			sink.write(chars.array(), 0, chars.position());
+			chars.clear();
+		}
+	}
 }
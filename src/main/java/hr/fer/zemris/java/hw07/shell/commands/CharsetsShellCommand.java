@@ -37,9 +37,9 @@ public class CharsetsShellCommand implements ShellCommand {
 
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		System.out.println("Available charsets:");
+		env.writeln("Available charsets:");
 		Charset.availableCharsets()
-				.forEach((name, charset) -> System.out.println(name));
+				.forEach((name, charset) -> env.writeln(name));
 		return ShellStatus.CONTINUE;
 	}
 
@@ -0,0 +1,207 @@
+package hr.fer.zemris.java.hw07.shell.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Separates the options of a shell command (arguments starting with a
+ * <code>-</code>) from its positional arguments. Options listed as
+ * <i>valued</i> consume the argument which follows them, options listed as
+ * <i>flags</i> stand on their own, and any other option is rejected. An
+ * argument <code>--</code> ends the options, so that all of the arguments
+ * after it are positional, even if they start with a dash.
+ *
+ * @author 0036502252
+ *
+ */
+class CommandOptions {
+	/**
+	 * The argument after which all of the arguments are positional.
+	 */
+	private static final String END_OF_OPTIONS = "--";
+
+	/**
+	 * The names of the options which expect a value.
+	 */
+	private Set<String> valued;
+	/**
+	 * The names of the options which are simple flags.
+	 */
+	private Set<String> known;
+	/**
+	 * The flags present in the arguments.
+	 */
+	private Set<String> flags;
+	/**
+	 * The values of the valued options, mapped by the option name.
+	 */
+	private Map<String, String> values;
+	/**
+	 * The remaining, positional arguments.
+	 */
+	private List<String> positional;
+
+	/**
+	 * Constructs a new {@link CommandOptions} by splitting the given
+	 * arguments of a command which has no flags.
+	 *
+	 * @param args
+	 *            the arguments returned by the shell's parser
+	 * @param valuedOptions
+	 *            the names of the options which expect a value
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown, or a valued option is not followed
+	 *             by its value
+	 */
+	public CommandOptions(String[] args, String... valuedOptions) {
+		this(args, new String[0], valuedOptions);
+	}
+
+	/**
+	 * Constructs a new {@link CommandOptions} by splitting the given
+	 * arguments.
+	 *
+	 * @param args
+	 *            the arguments returned by the shell's parser
+	 * @param flagOptions
+	 *            the names of the options which are simple flags
+	 * @param valuedOptions
+	 *            the names of the options which expect a value
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown, or a valued option is not followed
+	 *             by its value
+	 */
+	public CommandOptions(String[] args, String[] flagOptions,
+			String... valuedOptions) {
+		this.valued = new HashSet<>(Arrays.asList(valuedOptions));
+		this.known = new HashSet<>(Arrays.asList(flagOptions));
+		this.flags = new HashSet<>();
+		this.values = new HashMap<>();
+		this.positional = new ArrayList<>();
+
+		boolean optionsEnded = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (optionsEnded || !isOption(arg)) {
+				positional.add(arg);
+			} else if (arg.equals(END_OF_OPTIONS)) {
+				optionsEnded = true;
+			} else if (valued.contains(arg)) {
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException(
+							"Option " + arg + " expects a value.");
+				}
+				values.put(arg, args[++i]);
+			} else if (known.contains(arg)) {
+				flags.add(arg);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+	}
+
+	/**
+	 * @param flag
+	 *            the name of the flag
+	 * @return true if the flag was given
+	 */
+	public boolean hasFlag(String flag) {
+		return flags.contains(flag);
+	}
+
+	/**
+	 * @param option
+	 *            the name of the valued option
+	 * @return true if the option was given
+	 */
+	public boolean hasValue(String option) {
+		return values.containsKey(option);
+	}
+
+	/**
+	 * @param option
+	 *            the name of the valued option
+	 * @param defaultValue
+	 *            returned if the option was not given
+	 * @return the value of the option
+	 */
+	public String getString(String option, String defaultValue) {
+		String value = values.get(option);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Gets the value of an option which expects a non-negative number.
+	 *
+	 * @param option
+	 *            the name of the valued option
+	 * @param defaultValue
+	 *            returned if the option was not given
+	 * @return the value of the option
+	 * @throws IllegalArgumentException
+	 *             if the value is not a non-negative number
+	 */
+	public long getLong(String option, long defaultValue) {
+		String value = values.get(option);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		long result;
+		try {
+			result = Long.parseLong(value);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException(
+					"Option " + option + " expects a number, was: " + value);
+		}
+		if (result < 0) {
+			throw new IllegalArgumentException(
+					"Option " + option + " must not be negative.");
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the value of an option which expects a positive integer, such as a
+	 * number of worker threads.
+	 *
+	 * @param option
+	 *            the name of the valued option
+	 * @param defaultValue
+	 *            returned if the option was not given
+	 * @return the value of the option
+	 * @throws IllegalArgumentException
+	 *             if the value is not a positive integer
+	 */
+	public int getPositiveInt(String option, int defaultValue) {
+		long result = getLong(option, defaultValue);
+		if (result < 1 || result > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"Option " + option + " must be a positive integer.");
+		}
+		return (int) result;
+	}
+
+	/**
+	 * @return the positional arguments, in their original order
+	 */
+	public List<String> getPositional() {
+		return positional;
+	}
+
+	/**
+	 * @param arg
+	 *            the argument to be checked
+	 * @return true if the argument looks like an option, i.e. it starts with a
+	 *         dash followed by a letter or another dash
+	 */
+	private static boolean isOption(String arg) {
+		return arg.length() > 1 && arg.charAt(0) == '-'
+				&& (arg.charAt(1) == '-' || Character.isLetter(arg.charAt(1)));
+	}
+}
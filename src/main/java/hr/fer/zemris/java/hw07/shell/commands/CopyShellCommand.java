@@ -1,15 +1,13 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -37,9 +35,14 @@ public class CopyShellCommand implements ShellCommand {
 	private List<String> description;
 
 	/**
-	 * Constant used in a buffer.
+	 * The size of the direct buffer used when the kernel-side transfer can not
+	 * be used.
 	 */
-	private final int FOUR_KB = 4096;
+	private static final int ONE_MB = 1024 * 1024;
+	/**
+	 * The flag which enables printing of the transfer statistics.
+	 */
+	private static final String STATS_FLAG = "--stats";
 
 	/**
 	 * Constructs a new {@link CopyShellCommand}.
@@ -54,22 +57,30 @@ public class CopyShellCommand implements ShellCommand {
 		list.add("If the second argument is a directory, the file is copied to "
 				+ "the directory using the original file name.");
 		list.add("Only works with files.");
+		list.add("If the " + STATS_FLAG + " flag is given, the transfer rate "
+				+ "is printed after copying.");
 
 		description = Collections.unmodifiableList(list);
 	}
 
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String[] args = null;
+		CommandOptions options;
 		try {
-			args = new ShellCommandParser(arguments).parsePath();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					new String[] { STATS_FLAG });
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
-		if (args.length != 2) {
+		List<String> paths = options.getPositional();
+		if (paths.size() != 2) {
 			env.writeln("Error! Copy command expects 2 arguments.");
 			return ShellStatus.CONTINUE;
 		}
@@ -77,8 +88,8 @@ public class CopyShellCommand implements ShellCommand {
 		Path input;
 		Path output;
 		try {
-			input = env.getCurrentDirectory().resolve(args[0].trim());
-			output = env.getCurrentDirectory().resolve(args[1].trim());
+			input = env.getCurrentDirectory().resolve(paths.get(0));
+			output = env.getCurrentDirectory().resolve(paths.get(1));
 		} catch (InvalidPathException ex) {
 			env.writeln("Invalid path!");
 			return ShellStatus.CONTINUE;
@@ -105,26 +116,76 @@ public class CopyShellCommand implements ShellCommand {
 					.toPath();
 		}
 
-		try (InputStream is = new BufferedInputStream(
-				new FileInputStream(input.toString()));
-				OutputStream os = new BufferedOutputStream(
-						new FileOutputStream(output.toString()))) {
-
-			byte[] buf = new byte[FOUR_KB];
-			while (true) {
-				int r = is.read(buf);
-				if (r < 1)
-					break;
-				os.write(buf, 0, r);
-			}
-
+		long start = System.nanoTime();
+		long copied;
+		try {
+			copied = copyFile(input, output);
 		} catch (IOException e) {
 			env.writeln("Error during writing.");
+			return ShellStatus.CONTINUE;
+		}
+
+		if (options.hasFlag(STATS_FLAG)) {
+			long elapsed = Math.max(System.nanoTime() - start, 1);
+			env.writeln(String.format("Copied %d bytes in %.3f s (%.1f MB/s).",
+					copied, elapsed / 1e9, copied * 1e9 / elapsed / ONE_MB));
 		}
 
 		return ShellStatus.CONTINUE;
 	}
 
+	/**
+	 * Copies the contents of one file into another. If both files are regular
+	 * files, the bytes are transferred by the kernel using
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * without being copied into the Java heap. Otherwise (e.g. pipes or
+	 * devices), a large direct buffer is used.
+	 * 
+	 * @param input
+	 *            the source file
+	 * @param output
+	 *            the destination file, created or truncated if needed
+	 * @return the number of copied bytes
+	 * @throws IOException
+	 *             in case reading or writing goes awry
+	 */
+	static long copyFile(Path input, Path output) throws IOException {
+		boolean regular = Files.isRegularFile(input)
+				&& (Files.notExists(output) || Files.isRegularFile(output));
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output,
+						StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			if (regular) {
+				// a single call transfers at most 2 GB on some platforms
+				long size = in.size();
+				long position = 0;
+				while (position < size) {
+					long transferred = in.transferTo(position,
+							size - position, out);
+					if (transferred <= 0) {
+						break; // the file was truncated while copying
+					}
+					position += transferred;
+				}
+				return position;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(ONE_MB);
+			long total = 0;
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					total += out.write(buffer);
+				}
+				buffer.clear();
+			}
+			return total;
+		}
+	}
+
 	@Override
 	public String getCommandName() {
 		return name;
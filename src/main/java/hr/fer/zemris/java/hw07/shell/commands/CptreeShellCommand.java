@@ -9,7 +9,16 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
@@ -22,6 +31,20 @@ import hr.fer.zemris.java.hw07.shell.ShellStatus;
  *
  */
 public class CptreeShellCommand implements ShellCommand {
+	/**
+	 * The option which enables parallel copying, followed by the number of
+	 * worker threads.
+	 */
+	private static final String JOBS_OPTION = "-j";
+	/**
+	 * The interval between two progress reports of a parallel copy, in
+	 * milliseconds.
+	 */
+	private static final long PROGRESS_INTERVAL = 1000;
+	/**
+	 * The maximum number of failures which are listed after a parallel copy.
+	 */
+	private static final int MAX_LISTED_FAILURES = 10;
 
 	/**
 	 * This command's description.
@@ -41,29 +64,47 @@ public class CptreeShellCommand implements ShellCommand {
 		description.add("Copies a directory from one path to another.");
 		description.add("The first argument is the source directory,");
 		description.add("and the second argument is the destination.");
+		description.add("With the option " + JOBS_OPTION + " N the files are"
+				+ " copied in parallel using N worker threads.");
 	}
 
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String[] args = null;
+		CommandOptions options;
 		try {
-			args = new ShellCommandParser(arguments).parsePath();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					JOBS_OPTION);
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
-		if (args.length != 2) {
+		List<String> args = options.getPositional();
+		if (args.size() != 2) {
 			env.writeln("Error! Copy command expects 2 arguments.");
 			return ShellStatus.CONTINUE;
 		}
 
+		int parallelism = 0;
+		if (options.hasValue(JOBS_OPTION)) {
+			try {
+				parallelism = options.getPositiveInt(JOBS_OPTION, 1);
+			} catch (IllegalArgumentException ex) {
+				env.writeln(ex.getMessage());
+				return ShellStatus.CONTINUE;
+			}
+		}
+
 		Path src;
 		Path dest;
 		try {
-			src = env.getCurrentDirectory().resolve(args[0].trim());
-			dest = env.getCurrentDirectory().resolve(args[1].trim());
+			src = env.getCurrentDirectory().resolve(args.get(0));
+			dest = env.getCurrentDirectory().resolve(args.get(1));
 		} catch (InvalidPathException ex) {
 			env.writeln("Invalid path!");
 			return ShellStatus.CONTINUE;
@@ -83,7 +124,11 @@ public class CptreeShellCommand implements ShellCommand {
 		}
 
 		try {
-			Files.walkFileTree(src, new MyCopyVisitor(dest));
+			if (parallelism > 0) {
+				parallelCopy(env, src, dest, parallelism);
+			} else {
+				Files.walkFileTree(src, new MyCopyVisitor(dest, env));
+			}
 		} catch (IOException e) {
 			env.writeln("Could not copy the directory.");
 			e.printStackTrace();
@@ -92,6 +137,246 @@ public class CptreeShellCommand implements ShellCommand {
 		return ShellStatus.CONTINUE;
 	}
 
+	/**
+	 * Copies a directory using multiple worker threads. The source tree is
+	 * walked only once; all of the directories are created first, after which
+	 * the files are copied by a {@link ForkJoinPool}. Instead of a line per
+	 * file, the progress is reported periodically.
+	 * 
+	 * @param env
+	 *            the environment used for output
+	 * @param src
+	 *            the directory to be copied
+	 * @param dest
+	 *            the directory in which the copy is created
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @throws IOException
+	 *             if the tree can not be walked or a directory can not be
+	 *             created
+	 */
+	private static void parallelCopy(Environment env, Path src, Path dest,
+			int parallelism) throws IOException {
+		long start = System.nanoTime();
+
+		CopyJob job = new CopyJob(src, dest.resolve(src.getFileName()));
+		Files.walkFileTree(src, new SnapshotVisitor(job));
+
+		for (Path dir : job.directories) {
+			Files.createDirectory(job.target.resolve(dir));
+		}
+
+		int total = job.files.size();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		CopyTask task = new CopyTask(job, 0, total);
+		pool.execute(task);
+		try {
+			while (true) {
+				try {
+					task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+					break;
+				} catch (TimeoutException ex) {
+					env.writeln("Copied " + job.copiedFiles.get() + "/" + total
+							+ " files (" + job.copiedBytes.get() + " bytes).");
+					// the output is buffered, so the progress is shown now
+					env.flush();
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			env.writeln("Copying was interrupted.");
+		} catch (ExecutionException ex) {
+			env.writeln("Copying failed: " + ex.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		env.writeln(String.format(
+				"Copied %d/%d files (%d bytes) and %d directories in %.3f s.",
+				job.copiedFiles.get(), total, job.copiedBytes.get(),
+				job.directories.size(), elapsed));
+
+		if (!job.failures.isEmpty()) {
+			env.writeln("Failed to copy " + job.failures.size() + " files:");
+			job.failures.stream().limit(MAX_LISTED_FAILURES)
+					.forEach(env::writeln);
+		}
+	}
+
+	/**
+	 * The state shared by all of the tasks of a single parallel copy.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class CopyJob {
+		/**
+		 * The directory being copied.
+		 */
+		final Path source;
+		/**
+		 * The root of the copy.
+		 */
+		final Path target;
+		/**
+		 * The directories to be created, relative to the source, parents
+		 * before children.
+		 */
+		final List<Path> directories = new ArrayList<>();
+		/**
+		 * The files to be copied, relative to the source.
+		 */
+		final List<Path> files = new ArrayList<>();
+		/**
+		 * The sizes of the files to be copied, as seen while walking the tree.
+		 */
+		long[] sizes = new long[16];
+		/**
+		 * The number of copied files.
+		 */
+		final AtomicLong copiedFiles = new AtomicLong();
+		/**
+		 * The number of copied bytes.
+		 */
+		final AtomicLong copiedBytes = new AtomicLong();
+		/**
+		 * The descriptions of the failed copies.
+		 */
+		final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * Constructs a new {@link CopyJob}.
+		 * 
+		 * @param source
+		 *            the directory being copied
+		 * @param target
+		 *            the root of the copy
+		 */
+		CopyJob(Path source, Path target) {
+			this.source = source;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * Walks the source tree once, and records its directories and files in a
+	 * {@link CopyJob}.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class SnapshotVisitor extends SimpleFileVisitor<Path> {
+		/**
+		 * The job which is filled.
+		 */
+		private CopyJob job;
+
+		/**
+		 * Constructs a new {@link SnapshotVisitor}.
+		 * 
+		 * @param job
+		 *            the job which is filled
+		 */
+		SnapshotVisitor(CopyJob job) {
+			this.job = job;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir,
+				BasicFileAttributes attrs) throws IOException {
+			job.directories.add(job.source.relativize(dir));
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+				throws IOException {
+			if (job.files.size() == job.sizes.length) {
+				job.sizes = Arrays.copyOf(job.sizes, job.sizes.length * 2);
+			}
+			job.sizes[job.files.size()] = attrs.size();
+			job.files.add(job.source.relativize(file));
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc)
+				throws IOException {
+			job.failures.add(file + ": " + exc);
+			return FileVisitResult.CONTINUE;
+		}
+	}
+
+	/**
+	 * Copies a range of the files of a {@link CopyJob}. Large ranges are split
+	 * in half, so idle workers can steal the work of busy ones.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class CopyTask extends RecursiveAction {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = -1766415024213470153L;
+		/**
+		 * Ranges with at most this many files are copied without splitting.
+		 */
+		private static final int THRESHOLD = 32;
+		/**
+		 * The job whose files are copied.
+		 */
+		private transient CopyJob job;
+		/**
+		 * The index of the first file in the range, inclusive.
+		 */
+		private int from;
+		/**
+		 * The index of the last file in the range, exclusive.
+		 */
+		private int to;
+
+		/**
+		 * Constructs a new {@link CopyTask}.
+		 * 
+		 * @param job
+		 *            the job whose files are copied
+		 * @param from
+		 *            the index of the first file in the range, inclusive
+		 * @param to
+		 *            the index of the last file in the range, exclusive
+		 */
+		CopyTask(CopyJob job, int from, int to) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new CopyTask(job, from, middle),
+						new CopyTask(job, middle, to));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				Path relative = job.files.get(i);
+				Path file = job.source.resolve(relative);
+				try {
+					Files.copy(file, job.target.resolve(relative),
+							StandardCopyOption.COPY_ATTRIBUTES);
+					job.copiedBytes.addAndGet(job.sizes[i]);
+					job.copiedFiles.incrementAndGet();
+				} catch (IOException ex) {
+					job.failures.add(file + ": " + ex);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Custom implementation of a {@link FileVisitor} which copies a directory
 	 * from a source path to a destination path.
@@ -104,6 +389,10 @@ public class CptreeShellCommand implements ShellCommand {
 		 * The destination path.
 		 */
 		Path dest;
+		/**
+		 * The environment used for output.
+		 */
+		Environment env;
 
 		/**
 		 * Constructs a new {@link MyCopyVisitor}.
@@ -111,9 +400,12 @@ public class CptreeShellCommand implements ShellCommand {
 		 * @param dest
 		 *            the desired destination path where the source folder will
 		 *            be copied
+		 * @param env
+		 *            the environment used for output
 		 */
-		public MyCopyVisitor(Path dest) {
+		public MyCopyVisitor(Path dest, Environment env) {
 			this.dest = dest;
+			this.env = env;
 		}
 
 		@Override
@@ -130,7 +422,7 @@ public class CptreeShellCommand implements ShellCommand {
 			Path target = dest.resolve(file.getFileName());
 			Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
 
-			System.out.println("Copied file " + file + " to path "
+			env.writeln("Copied file " + file + " to path "
 					+ dest.resolve(file.getFileName()));
 
 			return FileVisitResult.CONTINUE;
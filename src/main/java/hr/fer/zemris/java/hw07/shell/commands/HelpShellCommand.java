@@ -40,14 +40,14 @@ public class HelpShellCommand implements ShellCommand {
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
 		if(arguments.isEmpty()) {
-			System.out.println("Available commands: ");
-			env.commands().forEach((name, command)-> System.out.println(name));
+			env.writeln("Available commands: ");
+			env.commands().forEach((name, command)-> env.writeln(name));
 		} else {
 			ShellCommand c = env.commands().get(arguments);
 			if(c == null) {
-				System.out.println("Command not found.");
+				env.writeln("Command not found.");
 			} else {
-				c.getCommandDescription().forEach(System.out::println);
+				c.getCommandDescription().forEach(env::writeln);
 			}
 		}
 		
@@ -1,9 +1,12 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -21,145 +24,187 @@ import hr.fer.zemris.java.hw07.shell.ShellStatus;
  */
 public class HexdumpShellCommand implements ShellCommand {
 	/**
-	 * The name of the command.
+	 * The number of bytes read from the file at once. Must be a multiple of
+	 * {@link RowRenderer#ROW_LENGTH}.
 	 */
-	private String name;
+	private static final int BLOCK_SIZE = 64 * 1024;
 	/**
-	 * The description of the command.
+	 * The maximum number of bytes mapped into memory at once when dumping a
+	 * window of the file. Must be a multiple of {@link RowRenderer#ROW_LENGTH}.
 	 */
-	private List<String> description;
+	private static final long MAP_SIZE = 64 * 1024 * 1024;
+	/**
+	 * The option which sets the offset of the first dumped byte.
+	 */
+	private static final String OFFSET_OPTION = "--offset";
 	/**
-	 * Eight hex values are printed per table section
+	 * The option which sets the maximum number of dumped bytes.
 	 */
-	private final int COUNTER_LENGTH = 8;
+	private static final String LENGTH_OPTION = "--length";
 	/**
-	 * The number 10 in hexadecimal. Used multiple times throughout this class
+	 * The option which dumps only the given number of bytes at the end of the
+	 * file.
 	 */
-	private final int HEX_10 = 16;
+	private static final String TAIL_OPTION = "--tail";
 	/**
-	 * Values with a byte value below this bound are printed as dots on the
-	 * right side of the table.
+	 * The name of the command.
 	 */
-	private static final int LOWER_BOUND = 32;
+	private String name;
 	/**
-	 * Values with a byte value above this bound are printed as dots on the
-	 * right side of the table.
+	 * The description of the command.
 	 */
-	private static final int UPPER_BOUND = 127;
+	private List<String> description;
 
 	/**
 	 * Constructs a new {@link HexdumpShellCommand}.
 	 */
 	public HexdumpShellCommand() {
-		name = "copy";
+		name = "hexdump";
 		ArrayList<String> list = new ArrayList<>();
 		list.add(
 				"Expects a single argument: file name, and produces hex-output.");
 		list.add(
 				"On the right side of the image only a standard subset of characters is shown.");
 		list.add("For all other characters a '.' is printed instead.");
+		list.add("A window of the file can be dumped using the options "
+				+ OFFSET_OPTION + " N and " + LENGTH_OPTION + " N,");
+		list.add("or " + TAIL_OPTION + " N to dump the last N bytes.");
 
 		description = Collections.unmodifiableList(list);
 	}
 
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String path = null;
+		CommandOptions options;
 		try {
-			path = new ShellCommandParser(arguments).parsePath()[0].trim();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					OFFSET_OPTION, LENGTH_OPTION, TAIL_OPTION);
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
-		
-		Path p = env.getCurrentDirectory().resolve(path);
-		
-		if (!p.toFile().isFile()) {
-			env.writeln("Expected a file path");
-		}
-		try (InputStream input = Files.newInputStream(p)) {
-			int counter = 0;
 
-			StringBuilder hexes = new StringBuilder();
-			StringBuilder symbols = new StringBuilder();
+		if (options.getPositional().size() != 1) {
+			env.writeln("Error! \"hexdump\" command expects a file path.");
+			return ShellStatus.CONTINUE;
+		}
 
-			while (true) {
-				int r = input.read();
-				if (r < 1) {
-					break;
-				}
+		if (options.hasValue(TAIL_OPTION) && (options.hasValue(OFFSET_OPTION)
+				|| options.hasValue(LENGTH_OPTION))) {
+			env.writeln("Option " + TAIL_OPTION + " can not be combined with "
+					+ OFFSET_OPTION + " or " + LENGTH_OPTION + ".");
+			return ShellStatus.CONTINUE;
+		}
 
-				// print the left side of the table which shows the counter
-				String hex = Integer.toHexString(r).toUpperCase();
-				hexes.append(hex.length() == 2 ? hex : "0" + hex).append(" ");
+		Path p;
+		try {
+			p = env.getCurrentDirectory()
+					.resolve(options.getPositional().get(0));
+		} catch (InvalidPathException ex) {
+			env.writeln("Invalid path!");
+			return ShellStatus.CONTINUE;
+		}
 
-				// on the right side of the table: print the hex value if it's
-				// within bounds, or print a dot
-				symbols.append((r < LOWER_BOUND) || (r > UPPER_BOUND) ? "."
-						: String.format("%c", r));
-				counter++;
+		if (!p.toFile().isFile()) {
+			env.writeln("Expected a file path");
+			return ShellStatus.CONTINUE;
+		}
 
-				// separate the table row; 8 by 8 hex values
-				if (counter % 8 == 0) {
-					hexes.append("| ");
-				}
+		try (FileChannel channel = FileChannel.open(p,
+				StandardOpenOption.READ)) {
+			RowRenderer renderer = new RowRenderer(env);
 
-				// print a table row every 16 values
-				if (counter % 16 == 0) {
-					String hexedCounter = Integer
-							.toHexString(counter / HEX_10 * HEX_10 - HEX_10)
-							.toUpperCase();
-					StringBuilder counterString = new StringBuilder();
-					appendMultipleTimes(counterString,
-							COUNTER_LENGTH - hexedCounter.length(), "0");
-					counterString.append(hexedCounter).append(": ");
-
-					env.writeln(counterString.toString() + hexes.toString()
-							+ symbols.toString());
-
-					hexes.setLength(0);
-					symbols.setLength(0);
+			if (options.hasValue(OFFSET_OPTION)
+					|| options.hasValue(LENGTH_OPTION)
+					|| options.hasValue(TAIL_OPTION)) {
+				long size = channel.size();
+				long offset;
+				long length;
+				if (options.hasValue(TAIL_OPTION)) {
+					length = Math.min(options.getLong(TAIL_OPTION, 0), size);
+					offset = size - length;
+				} else {
+					offset = Math.min(options.getLong(OFFSET_OPTION, 0), size);
+					length = Math.min(
+							options.getLong(LENGTH_OPTION, size - offset),
+							size - offset);
 				}
+				dumpWindow(channel, offset, length, renderer);
+			} else {
+				dumpAll(channel, renderer);
 			}
+			renderer.flush();
 
-			// check if there are any remaining bytes to print after reading the
-			// file, and align the table row accordingly..
-
-			if (counter % HEX_10 != 0) {
-
-				String hexedCounter = Integer
-						.toHexString(counter / HEX_10 * HEX_10).toUpperCase();
-				StringBuilder counterString = new StringBuilder();
-				appendMultipleTimes(counterString,
-						COUNTER_LENGTH - hexedCounter.length(), "0");
-				counterString.append(hexedCounter).append(": ");
-
-				int faliJos = HEX_10 - counter % HEX_10;
-
-				if (faliJos >= 8) {
-					appendMultipleTimes(hexes, 8 - counter % HEX_10, "   ");
-					hexes.append("| ");
-					appendMultipleTimes(hexes, 8, "   ");
-					hexes.append("| ");
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+		} catch (IOException e) {
+			env.writeln("Error while reading file: " + e.getMessage());
+		}
 
-				} else {
-					appendMultipleTimes(hexes, HEX_10 - counter % HEX_10,
-							"   ");
-					hexes.append("| ");
+		return ShellStatus.CONTINUE;
+	}
 
-				}
+	/**
+	 * Dumps the whole file by reading it block by block.
+	 * 
+	 * @param channel
+	 *            the channel of the file
+	 * @param renderer
+	 *            the renderer of the table
+	 * @throws IOException
+	 *             in case reading goes awry
+	 */
+	private static void dumpAll(FileChannel channel, RowRenderer renderer)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+		long offset = 0;
 
-				env.writeln(counterString.toString() + hexes.toString()
-						+ symbols.toString());
+		while (true) {
+			// fill the whole block, so that only the last row is partial
+			int r = 0;
+			while (buffer.hasRemaining() && (r = channel.read(buffer)) != -1)
+				;
+			buffer.flip();
+			renderer.render(buffer, offset);
+			offset += buffer.limit();
+			buffer.clear();
 
+			if (r == -1) {
+				break;
 			}
-
-		} catch (IOException e) {
-			env.writeln("Error while reading file: " + e.getMessage());
 		}
+	}
 
-		return ShellStatus.CONTINUE;
+	/**
+	 * Dumps a window of the file by mapping only the requested bytes into
+	 * memory, so the cost does not depend on where the window is located in
+	 * the file. Large windows are mapped piece by piece.
+	 * 
+	 * @param channel
+	 *            the channel of the file
+	 * @param offset
+	 *            the offset of the first dumped byte
+	 * @param length
+	 *            the number of dumped bytes
+	 * @param renderer
+	 *            the renderer of the table
+	 * @throws IOException
+	 *             in case mapping goes awry
+	 */
+	private static void dumpWindow(FileChannel channel, long offset,
+			long length, RowRenderer renderer) throws IOException {
+		for (long done = 0; done < length; done += MAP_SIZE) {
+			long position = offset + done;
+			MappedByteBuffer mapped = channel.map(
+					FileChannel.MapMode.READ_ONLY, position,
+					Math.min(MAP_SIZE, length - done));
+			renderer.render(mapped, position);
+		}
 	}
 
 	@Override
@@ -173,24 +218,179 @@ public class HexdumpShellCommand implements ShellCommand {
 	}
 
 	/**
-	 * Utility method, used for printing. Appends a StringBuilder with the
-	 * desired number of desired strings.
+	 * Renders bytes as rows of the hexdump table. Each row consists of the
+	 * offset of its first byte, sixteen hex values separated into two groups
+	 * of eight, and the printable characters of these bytes. The rows are
+	 * rendered using lookup tables into a single reusable character buffer,
+	 * which is written to the environment once it fills up.
 	 * 
-	 * @param sb
-	 *            the StringBuilder to which the strings are appended
-	 * @param n
-	 *            the number of times to append <code>str</code>
-	 * @param str
-	 *            the string to be appended <code>n</code> times
-	 * @return the new StringBuilder, with the appended strings
-	 * @see StringBuilder
+	 * @author 0036502252
+	 *
 	 */
-	private static StringBuilder appendMultipleTimes(StringBuilder sb, int n,
-			String str) {
-		for (int i = 0; i < n; i++) {
-			sb.append(str);
+	static class RowRenderer {
+		/**
+		 * The number of bytes shown in a single row.
+		 */
+		static final int ROW_LENGTH = 16;
+		/**
+		 * The minimum number of hex digits used for the offset of a row.
+		 */
+		private static final int OFFSET_DIGITS = 8;
+		/**
+		 * Values with a byte value below this bound are printed as dots on the
+		 * right side of the table.
+		 */
+		private static final int LOWER_BOUND = 32;
+		/**
+		 * Values with a byte value above this bound are printed as dots on the
+		 * right side of the table.
+		 */
+		private static final int UPPER_BOUND = 127;
+		/**
+		 * The hexadecimal digits, indexed by their value.
+		 */
+		private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+		/**
+		 * The first hex digit of each byte value.
+		 */
+		private static final char[] HIGH = new char[256];
+		/**
+		 * The second hex digit of each byte value.
+		 */
+		private static final char[] LOW = new char[256];
+		/**
+		 * The character shown on the right side of the table for each byte
+		 * value.
+		 */
+		private static final char[] SYMBOLS = new char[256];
+		/**
+		 * The line separator, appended after each row.
+		 */
+		private static final char[] NEWLINE = System.lineSeparator()
+				.toCharArray();
+		/**
+		 * The maximum length of a single row, including the line separator.
+		 */
+		private static final int MAX_ROW = 16 + 2 + ROW_LENGTH * 3 + 4
+				+ ROW_LENGTH + NEWLINE.length;
+		/**
+		 * The number of rows which fit into the output buffer.
+		 */
+		private static final int BUFFERED_ROWS = 512;
+
+		static {
+			for (int i = 0; i < 256; i++) {
+				HIGH[i] = DIGITS[i >>> 4];
+				LOW[i] = DIGITS[i & 0xF];
+				SYMBOLS[i] = i < LOWER_BOUND || i > UPPER_BOUND ? '.'
+						: (char) i;
+			}
 		}
-		return sb;
-	}
 
+		/**
+		 * The environment to which the rows are written.
+		 */
+		private Environment env;
+		/**
+		 * The reusable output buffer.
+		 */
+		private char[] out;
+		/**
+		 * The number of characters in the output buffer.
+		 */
+		private int position;
+
+		/**
+		 * Constructs a new {@link RowRenderer}.
+		 * 
+		 * @param env
+		 *            the environment to which the rows are written
+		 */
+		RowRenderer(Environment env) {
+			this.env = env;
+			this.out = new char[MAX_ROW * BUFFERED_ROWS];
+		}
+
+		/**
+		 * Renders the remaining bytes of the buffer, starting with a new row.
+		 * The buffer's position is not modified.
+		 * 
+		 * @param bytes
+		 *            the bytes to be rendered
+		 * @param offset
+		 *            the offset of the first remaining byte in the file
+		 */
+		void render(ByteBuffer bytes, long offset) {
+			int start = bytes.position();
+			int end = bytes.limit();
+			for (int row = start; row < end; row += ROW_LENGTH) {
+				if (position + MAX_ROW > out.length) {
+					flush();
+				}
+				renderRow(bytes, row, Math.min(ROW_LENGTH, end - row),
+						offset + row - start);
+			}
+		}
+
+		/**
+		 * Writes the buffered rows to the environment.
+		 */
+		void flush() {
+			env.write(out, 0, position);
+			position = 0;
+		}
+
+		/**
+		 * Renders a single row into the output buffer.
+		 * 
+		 * @param bytes
+		 *            the buffer holding the bytes
+		 * @param index
+		 *            the index of the row's first byte in the buffer
+		 * @param length
+		 *            the number of bytes in the row, shorter rows are padded
+		 * @param offset
+		 *            the offset of the row's first byte in the file
+		 */
+		private void renderRow(ByteBuffer bytes, int index, int length,
+				long offset) {
+			char[] out = this.out;
+			int p = position;
+
+			int digits = Math.max(OFFSET_DIGITS,
+					(67 - Long.numberOfLeadingZeros(offset)) / 4);
+			for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+				out[p++] = DIGITS[(int) (offset >>> shift) & 0xF];
+			}
+			out[p++] = ':';
+			out[p++] = ' ';
+
+			for (int i = 0; i < ROW_LENGTH; i++) {
+				if (i < length) {
+					int b = bytes.get(index + i) & 0xFF;
+					out[p++] = HIGH[b];
+					out[p++] = LOW[b];
+				} else {
+					out[p++] = ' ';
+					out[p++] = ' ';
+				}
+				out[p++] = ' ';
+
+				// separate the table row; 8 by 8 hex values
+				if (i % 8 == 7) {
+					out[p++] = '|';
+					out[p++] = ' ';
+				}
+			}
+
+			for (int i = 0; i < length; i++) {
+				out[p++] = SYMBOLS[bytes.get(index + i) & 0xFF];
+			}
+
+			for (char c : NEWLINE) {
+				out[p++] = c;
+			}
+			position = p;
+		}
+	}
 }
@@ -1,19 +1,20 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
-import java.text.SimpleDateFormat;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
@@ -46,6 +47,23 @@ public class LsShellCommand implements ShellCommand {
 	 * Appended to the start of the string if a condition is not satisfied.
 	 */
 	private static final String NOT_SATISFIED = "-";
+	/**
+	 * The option which limits the number of listed entries.
+	 */
+	private static final String LIMIT_OPTION = "--limit";
+	/**
+	 * The option which sorts the listed entries by a key.
+	 */
+	private static final String SORT_OPTION = "--sort";
+	/**
+	 * The width of the size column.
+	 */
+	private static final int SIZE_WIDTH = 10;
+	/**
+	 * Formats the creation date/time of the listed files.
+	 */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 	/**
 	 * The name of this command.
 	 */
@@ -65,6 +83,11 @@ public class LsShellCommand implements ShellCommand {
 				"Takes a single argument – directory – and writes a directory listing (not recursive).");
 		list.add(
 				"Output is formatted as: attributes, size, date created, and file name.");
+		list.add("The option " + LIMIT_OPTION + " N lists at most N entries.");
+		list.add("The option " + SORT_OPTION + " name|size|mtime sorts the "
+				+ "entries by name, or by size or modification time with the "
+				+ "largest and newest first.");
+		list.add("Without sorting, entries are listed as they are read.");
 		description = Collections.unmodifiableList(list);
 	}
 
@@ -77,59 +100,70 @@ public class LsShellCommand implements ShellCommand {
 	 */
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		File file;
-		String pathName = null;
+		Path dir;
+		CommandOptions options;
 		try {
-			pathName = new ShellCommandParser(arguments).parsePath()[0].trim();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					LIMIT_OPTION, SORT_OPTION);
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
+		if (options.getPositional().size() != 1) {
+			env.writeln("Error! \"ls\" command expects a directory.");
+			return ShellStatus.CONTINUE;
+		}
+
+		long limit;
+		Comparator<Entry> order = null;
 		try {
-			file = env.getCurrentDirectory().resolve(pathName).toFile();
+			limit = options.getLong(LIMIT_OPTION, Long.MAX_VALUE);
+			if (options.hasValue(SORT_OPTION)) {
+				order = comparator(options.getString(SORT_OPTION, null));
+			}
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
+		}
+
+		try {
+			dir = env.getCurrentDirectory()
+					.resolve(options.getPositional().get(0));
 		} catch (InvalidPathException ex) {
 			env.writeln("Invalid path!");
 			return ShellStatus.CONTINUE;
 		}
 
-		if (!file.isDirectory()) {
+		if (!Files.isDirectory(dir)) {
 			env.writeln("The path " + arguments
 					+ " does not represent a directory.");
 			return ShellStatus.CONTINUE;
 		}
 
-		try {
-			File[] children = file.listFiles();
-			StringBuilder sb = new StringBuilder();
-			for (File f : children) {
-					Path path = f.toPath();
-					sb.append(f.isDirectory() ? IS_DIRECTORY : NOT_SATISFIED)
-							.append(f.canRead() ? IS_READABLE : NOT_SATISFIED)
-							.append(f.canWrite() ? IS_WRITABLE : NOT_SATISFIED)
-							.append(f.canExecute() ? IS_EXECUTABLE : NOT_SATISFIED)
-							.append(' ');
-
-					long size = f.length();
-					sb.append(String.format("%10d", size)).append(' ');
-
-					SimpleDateFormat sdf = new SimpleDateFormat(
-							"yyyy-MM-dd HH:mm:ss");
-					BasicFileAttributeView faView = Files.getFileAttributeView(
-							path, BasicFileAttributeView.class,
-							LinkOption.NOFOLLOW_LINKS);
-					BasicFileAttributes attributes = faView.readAttributes();
-					FileTime fileTime = attributes.creationTime();
-					String formattedDateTime = sdf
-							.format(new Date(fileTime.toMillis()));
-					sb.append(formattedDateTime).append(' ')
-							.append(f.getName());
-
-					env.writeln(sb.toString());
-
-					sb.setLength(0);
-				
+		boolean posix = dir.getFileSystem().supportedFileAttributeViews()
+				.contains("posix");
+		LineFormatter formatter = new LineFormatter();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			if (order == null) {
+				long listed = 0;
+				for (Path path : stream) {
+					if (listed++ == limit) {
+						break;
+					}
+					env.writeln(formatter.format(path,
+							readAttributes(path, posix)));
+				}
+			} else {
+				for (Entry entry : sorted(stream, posix, order, limit)) {
+					env.writeln(formatter.format(entry.path, entry.attributes));
+				}
 			}
 		} catch (IOException e) {
 			env.writeln("Error during listing.");
@@ -137,6 +171,210 @@ public class LsShellCommand implements ShellCommand {
 		return ShellStatus.CONTINUE;
 	}
 
+	/**
+	 * Reads the entries of a directory, and returns the first ones according
+	 * to the given order. If a limit is given, only that many entries are kept
+	 * in memory, using a bounded heap.
+	 * 
+	 * @param stream
+	 *            the entries of the directory
+	 * @param posix
+	 *            true if the file system supports POSIX attributes
+	 * @param order
+	 *            the order of the entries
+	 * @param limit
+	 *            the maximum number of returned entries
+	 * @return the sorted entries
+	 * @throws IOException
+	 *             if the attributes of an entry can not be read
+	 */
+	private static List<Entry> sorted(DirectoryStream<Path> stream,
+			boolean posix, Comparator<Entry> order, long limit)
+			throws IOException {
+		List<Entry> result = new ArrayList<>();
+		if (limit == 0) {
+			return result;
+		}
+
+		if (limit == Long.MAX_VALUE) {
+			for (Path path : stream) {
+				result.add(new Entry(path, readAttributes(path, posix)));
+			}
+		} else {
+			// the head of the heap is the last of the kept entries
+			PriorityQueue<Entry> heap = new PriorityQueue<>(
+					(int) Math.min(limit, 1024), order.reversed());
+			for (Path path : stream) {
+				Entry entry = new Entry(path, readAttributes(path, posix));
+				if (heap.size() < limit) {
+					heap.add(entry);
+				} else if (order.compare(entry, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(entry);
+				}
+			}
+			result.addAll(heap);
+		}
+
+		result.sort(order);
+		return result;
+	}
+
+	/**
+	 * Gets the order of the entries for the given sort key.
+	 * 
+	 * @param key
+	 *            the sort key, one of name, size and mtime
+	 * @return the order of the entries
+	 * @throws IllegalArgumentException
+	 *             if the key is not supported
+	 */
+	private static Comparator<Entry> comparator(String key) {
+		Comparator<Entry> byName = Comparator
+				.comparing(e -> e.path.getFileName().toString());
+		switch (key) {
+		case "name":
+			return byName;
+		case "size":
+			return Comparator
+					.comparingLong((Entry e) -> e.attributes.size())
+					.reversed().thenComparing(byName);
+		case "mtime":
+			return Comparator
+					.comparing((Entry e) -> e.attributes.lastModifiedTime())
+					.reversed().thenComparing(byName);
+		default:
+			throw new IllegalArgumentException(
+					"Unsupported sort key: " + key);
+		}
+	}
+
+	/**
+	 * A listed file, together with its attributes.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class Entry {
+		/**
+		 * The path of the file.
+		 */
+		final Path path;
+		/**
+		 * The attributes of the file.
+		 */
+		final BasicFileAttributes attributes;
+
+		/**
+		 * Constructs a new {@link Entry}.
+		 * 
+		 * @param path
+		 *            the path of the file
+		 * @param attributes
+		 *            the attributes of the file
+		 */
+		Entry(Path path, BasicFileAttributes attributes) {
+			this.path = path;
+			this.attributes = attributes;
+		}
+	}
+
+	/**
+	 * Formats the lines of the listing, reusing a single builder.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class LineFormatter {
+		/**
+		 * The builder of the lines.
+		 */
+		private StringBuilder sb = new StringBuilder();
+
+		/**
+		 * Formats a line of the listing.
+		 * 
+		 * @param path
+		 *            the listed file
+		 * @param attributes
+		 *            the attributes of the file
+		 * @return the formatted line
+		 */
+		String format(Path path, BasicFileAttributes attributes) {
+			sb.setLength(0);
+			appendFlags(sb, path, attributes);
+			appendSize(sb, attributes.size());
+			DATE_FORMAT.formatTo(attributes.creationTime().toInstant(), sb);
+			sb.append(' ').append(path.getFileName());
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Reads all of the attributes needed for listing a file at once. Symbolic
+	 * links are followed, unless they are broken.
+	 * 
+	 * @param path
+	 *            the listed file
+	 * @param posix
+	 *            true if the file system supports POSIX attributes
+	 * @return the attributes of the file
+	 * @throws IOException
+	 *             if the attributes can not be read
+	 */
+	private static BasicFileAttributes readAttributes(Path path, boolean posix)
+			throws IOException {
+		Class<? extends BasicFileAttributes> type = posix
+				? PosixFileAttributes.class
+				: BasicFileAttributes.class;
+		try {
+			return Files.readAttributes(path, type);
+		} catch (IOException ex) {
+			return Files.readAttributes(path, type, LinkOption.NOFOLLOW_LINKS);
+		}
+	}
+
+	/**
+	 * Appends the first column, which indicates if the file is a directory,
+	 * readable, writable and executable. The access is checked by the file
+	 * system for the current process, as the permission bits alone do not
+	 * account for groups, ACLs, read-only mounts or the superuser.
+	 * 
+	 * @param sb
+	 *            the builder of the line
+	 * @param path
+	 *            the listed file
+	 * @param attributes
+	 *            the attributes of the file
+	 */
+	private static void appendFlags(StringBuilder sb, Path path,
+			BasicFileAttributes attributes) {
+		sb.append(attributes.isDirectory() ? IS_DIRECTORY : NOT_SATISFIED)
+				.append(Files.isReadable(path) ? IS_READABLE : NOT_SATISFIED)
+				.append(Files.isWritable(path) ? IS_WRITABLE : NOT_SATISFIED)
+				.append(Files.isExecutable(path) ? IS_EXECUTABLE
+						: NOT_SATISFIED)
+				.append(' ');
+	}
+
+	/**
+	 * Appends the second column, which contains the size of the file, right
+	 * aligned.
+	 * 
+	 * @param sb
+	 *            the builder of the line
+	 * @param size
+	 *            the size of the file in bytes
+	 */
+	private static void appendSize(StringBuilder sb, long size) {
+		int start = sb.length();
+		sb.append(size);
+		for (int i = sb.length() - start; i < SIZE_WIDTH; i++) {
+			sb.insert(start, ' ');
+		}
+		sb.append(' ');
+	}
+
 	@Override
 	public String getCommandName() {
 		return name;
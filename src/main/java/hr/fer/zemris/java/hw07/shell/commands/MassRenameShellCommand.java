@@ -1,23 +1,34 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ParserException;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
 import hr.fer.zemris.java.hw07.shell.ShellStatus;
-import hr.fer.zemris.java.hw07.shell.commands.ShellCommand;
+import hr.fer.zemris.java.hw07.shell.commands.RenameTransaction.Outcome;
+import hr.fer.zemris.java.hw07.shell.namebuilder.CompiledNameBuilder;
 import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilder;
 import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilderInfo;
 import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilderParser;
@@ -26,11 +37,36 @@ import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilderParser;
  * Renames multiple files according to a regular expression and its potential
  * groupings. Also supports multiple subcommands to show the potential result of
  * renaming before actual renaming is executed.
+ * <p>
+ * The regular expression is compiled once per invocation, and the entries of
+ * the source directory are streamed and matched exactly once; the
+ * {@link MatchResult} of each matching file is passed on to name building.
+ * New names are built by a compiled {@link NameBuilder} into a single reused
+ * {@link BuilderInfoImpl}, so the only object created per name is the name.
+ * <p>
+ * If the name expression uses counters, the matching files are numbered in
+ * the order of their names, so the numbering does not depend on the order of
+ * the directory entries. If it uses the attributes or the digests of the
+ * files, they are read only for the matching files, by multiple worker
+ * threads.
+ * <p>
+ * The execute subcommand is carried out as a {@link RenameTransaction}: the
+ * whole renaming is validated and journaled before the files are moved in
+ * parallel, and the most recent renaming into a directory can be reverted by
+ * the undo subcommand.
  * 
  * @author 0036502252
  *
  */
 public class MassRenameShellCommand implements ShellCommand {
+	/**
+	 * The option which sets the number of worker threads.
+	 */
+	private static final String JOBS_OPTION = "-j";
+	/**
+	 * The maximum number of problems or failures which are listed.
+	 */
+	private static final int MAX_LISTED_FAILURES = 10;
 	/**
 	 * The input path.
 	 */
@@ -43,6 +79,14 @@ public class MassRenameShellCommand implements ShellCommand {
 	 * The arguments sent by the user, and separated by a parser.
 	 */
 	private String[] args;
+	/**
+	 * The compiled regular expression of the current invocation.
+	 */
+	private Pattern pattern;
+	/**
+	 * The number of worker threads moving the files.
+	 */
+	private int parallelism;
 	/**
 	 * The environment of the shell.
 	 */
@@ -67,7 +111,7 @@ public class MassRenameShellCommand implements ShellCommand {
 		description.add("The second argument is the destination directory.");
 		description.add("The third argument is the desired subcommand.");
 		description.add("The supported subcommands are: filter, groups, show,"
-				+ " execute.");
+				+ " execute, undo.");
 		description.add("The filter subcommand shows which files match the"
 				+ " regex from the 4th argument.");
 		description.add("The groups subcommand how the filenames are grouped"
@@ -77,6 +121,19 @@ public class MassRenameShellCommand implements ShellCommand {
 				+ " the additional 5th argument.");
 		description
 				.add("The execute subcommand executes the renaming process.");
+		description.add("Nothing is renamed if two files would get the same"
+				+ " name, or if a file would overwrite an existing one.");
+		description.add("Besides the groups, like ${1} or ${1,03}, the name"
+				+ " expression may use a counter ${#}, and the placeholders"
+				+ " ${size}, ${mtime} and ${sha256} of the file.");
+		description.add("Each value may be followed by the modifiers :upper,"
+				+ " :lower and :sub=A-B, a counter by :start=N and :step=N,"
+				+ " and ${mtime} by :format=PATTERN, e.g. ${#,04:start=0}.");
+		description.add("The files are read and moved in parallel; the number"
+				+ " of worker threads can be set with the option "
+				+ JOBS_OPTION + " N.");
+		description.add("The undo subcommand, given without the 4th argument,"
+				+ " reverts the last renaming into the destination directory.");
 
 	}
 
@@ -84,29 +141,59 @@ public class MassRenameShellCommand implements ShellCommand {
 	public ShellStatus executeCommand(Environment env, String arguments) {
 		this.env = env; // saved, since it's used in multiple methods
 
+		CommandOptions options;
 		try {
-			args = new ShellCommandParser(arguments).parsePath();
+			String[] parsed = new ShellCommandParser(arguments).parsePath();
+			options = new CommandOptions(
+					parsed == null ? new String[0] : parsed, JOBS_OPTION);
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
 		try {
-			input = env.getCurrentDirectory().resolve(args[0].trim());
-			output = env.getCurrentDirectory().resolve(args[1].trim());
+			parallelism = options.getPositiveInt(JOBS_OPTION,
+					Runtime.getRuntime().availableProcessors());
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
+		}
+
+		args = options.getPositional().toArray(new String[0]);
+		boolean undo = args.length == 3 && args[2].equals("undo");
+		if (!undo && args.length != 4 && args.length != 5) {
+			env.writeln("Expected 4 or 5 arguments for the command!");
+			return ShellStatus.CONTINUE;
+		}
+
+		try {
+			input = env.getCurrentDirectory().resolve(args[0]);
+			output = env.getCurrentDirectory().resolve(args[1]);
 		} catch (InvalidPathException ex) {
 			env.writeln("Paths are invalid!");
 			return ShellStatus.CONTINUE;
 		}
 
-		if (args.length != 4 && args.length != 5) {
-			env.writeln("Expected 4 or 5 arguments for the command!");
+		try {
+			pattern = undo ? null : Pattern.compile(args[3],
+					Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
+		} catch (PatternSyntaxException ex) {
+			env.writeln("Invalid regular expression!");
 			return ShellStatus.CONTINUE;
 		}
+
+		if (!Files.isDirectory(input)) {
+			env.writeln("Input path is not a valid directory!");
+			return ShellStatus.CONTINUE;
+		}
+
 		try {
 			executeSubcommand();
-		} catch (IllegalArgumentException ex) {
-			env.writeln("Invalid regular expression!");
+		} catch (IOException ex) {
+			env.writeln("Could not read the directory: " + ex.getMessage());
 		}
 
 		return ShellStatus.CONTINUE;
@@ -114,8 +201,11 @@ public class MassRenameShellCommand implements ShellCommand {
 
 	/**
 	 * Executes a given subcommand, based on the argument sent by the user.
+	 *
+	 * @throws IOException
+	 *             in case reading the source directory goes awry
 	 */
-	private void executeSubcommand() {
+	private void executeSubcommand() throws IOException {
 		switch (args[2]) {
 		case "filter":
 			printFilter();
@@ -133,176 +223,734 @@ public class MassRenameShellCommand implements ShellCommand {
 				env.writeln("Couldn't move files.");
 			}
 			break;
+		case "undo":
+			if (args.length == 3) {
+				undo();
+			} else {
+				env.writeln(
+						"The undo subcommand expects no regular expression!");
+			}
+			break;
 		default:
 			env.writeln(args[2] + " is not a valid command name!");
 		}
 	}
 
 	/**
-	 * Executes the filter subcommand. Doesn't print anything, since this method
-	 * is used in other subcommands.
-	 * 
-	 * @return the list of filtered files
-	 * @see MassRenameShellCommand#filter()
+	 * Matches the name of every entry of the source directory against the
+	 * regular expression, and passes the matching entries on. Used by all of
+	 * the subcommands. The journal of an earlier renaming is never matched.
+	 *
+	 * @param action
+	 *            receives each matching entry with its match result
+	 * @throws IOException
+	 *             in case reading the source directory goes awry
 	 */
-	private List<File> filter() {
-		File inputDir = input.toFile();
-		File outputDir = output.toFile();
-
-		if (!inputDir.isDirectory()) {
-			env.writeln("Input path is not a valid directory!");
-		}
-
-		if (!outputDir.isDirectory()) {
-			outputDir.mkdir();
-		}
-
-		Pattern pattern = Pattern.compile(args[3],
-				Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
-
-		List<File> filtered = new ArrayList<>();
-		for (File f : inputDir.listFiles()) {
-			Matcher matcher = pattern.matcher(f.getName());
-			if (matcher.matches()) {
-				filtered.add(f);
+	private void filter(MatchAction action) throws IOException {
+		Matcher matcher = pattern.matcher("");
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(input)) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+				if (RenameTransaction.isJournalName(name)) {
+					continue;
+				}
+				if (matcher.reset(name).matches()) {
+					action.matched(file, name, matcher);
+				}
 			}
 		}
-
-		return filtered;
 	}
 
 	/**
 	 * Prints the list of filtered commands to the shell.
+	 *
+	 * @throws IOException
+	 *             in case reading the source directory goes awry
 	 */
-	private void printFilter() {
-		List<File> filtered = filter();
-		filtered.forEach(System.out::println);
+	private void printFilter() throws IOException {
+		filter((file, name, result) -> env.writeln(file.toString()));
 	}
 
 	/**
 	 * Prints the groupings for each filename.
+	 *
+	 * @throws IOException
+	 *             in case reading the source directory goes awry
 	 */
-	private void groups() {
-		List<File> filtered = filter();
-
-		Pattern pattern = Pattern.compile(args[3],
-				Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
-
+	private void groups() throws IOException {
 		StringBuilder sb = new StringBuilder();
-		for (File f : filtered) {
-			Matcher matcher = pattern.matcher(f.getName());
-			matcher.matches();
-			sb.append(f.getName());
-			for (int i = 0, n = matcher.groupCount(); i <= n; i++) {
-				sb.append(" " + i + ": " + matcher.group(i));
+		filter((file, name, result) -> {
+			sb.append(name);
+			for (int i = 0, n = result.groupCount(); i <= n; i++) {
+				sb.append(' ').append(i).append(": ").append(result.group(i));
 			}
 			env.writeln(sb.toString());
 			sb.setLength(0);
-		}
+		});
 	}
 
 	/**
-	 * Shows how the files will be renamed when the execute subcommand is
-	 * called.
-	 * 
-	 * @return the new filenames mapped to their corresponding files, or null
-	 * in case the parser reports an error.
+	 * Parses the name expression given as the 5th argument.
+	 *
+	 * @return the name builder, or null in case the parser reports an error
 	 */
-	private Map<File, String> show() {
+	private CompiledNameBuilder parseNameBuilder() {
+		if (args.length != 5) {
+			env.writeln("Expected the name expression as the 5th argument!");
+			return null;
+		}
 
-		NameBuilderParser parser = new NameBuilderParser(args[4]);
-		NameBuilder builder;
+		CompiledNameBuilder builder;
 		try {
-			builder = parser.getNameBuilder();
+			builder = NameBuilderParser.compile(args[4]);
 		} catch (ParserException ex) {
 			env.writeln("Parser encountered an exception: " + ex.getMessage());
 			return null;
 		}
 
-		Pattern pattern = Pattern.compile(args[3],
-				Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
-		List<File> filtered = filter();
+		int groupCount = pattern.matcher("").groupCount();
+		if (builder.getMaxGroup() > groupCount) {
+			env.writeln("The name expression uses the group "
+					+ builder.getMaxGroup()
+					+ ", but the regular expression has " + groupCount
+					+ " groups!");
+			return null;
+		}
+		return builder;
+	}
+
+	/**
+	 * Shows how the files will be renamed when the execute subcommand is
+	 * called.
+	 *
+	 * @throws IOException
+	 *             in case reading the source directory goes awry
+	 */
+	private void show() throws IOException {
+		CompiledNameBuilder builder = parseNameBuilder();
+		if (builder == null) return;
+
+		buildNames(builder,
+				(oldName, newName) -> env.writeln(oldName + " => " + newName));
+	}
+
+	/**
+	 * Executes the mass renaming command. Nothing is moved unless the whole
+	 * renaming is valid and its journal has been written; if a move fails,
+	 * the files which were already moved are moved back.
+	 *
+	 * @throws IOException
+	 *             in case reading the source or creating the destination
+	 *             directory goes awry
+	 */
+	private void execute() throws IOException {
+		CompiledNameBuilder builder = parseNameBuilder();
+		if (builder == null) return;
+
+		RenameTransaction transaction = new RenameTransaction(input, output);
+		if (!buildNames(builder, transaction::add)) return;
+
+		List<String> problems = transaction.validate(MAX_LISTED_FAILURES);
+		if (!problems.isEmpty()) {
+			env.writeln("Nothing was renamed, since the renaming is invalid:");
+			problems.forEach(env::writeln);
+			return;
+		}
+		if (transaction.size() == 0) {
+			env.writeln("No files match the regular expression.");
+			return;
+		}
+
+		Files.createDirectories(output);
+		try {
+			transaction.writeJournal();
+		} catch (IOException ex) {
+			env.writeln("Nothing was renamed, since the journal could not be"
+					+ " written: " + ex);
+			return;
+		}
 
-		Map<File, String> oldToNew = new HashMap<>();
-		for (File file : filtered) {
-			Matcher matcher = pattern.matcher(file.getName());
-			matcher.matches();
+		long start = System.nanoTime();
+		Outcome outcome = transaction.execute(parallelism);
+		if (outcome.failures.isEmpty()) {
+			env.writeln(String.format("Renamed %d files in %.3f s.",
+					outcome.moved.get(), (System.nanoTime() - start) / 1e9));
+			return;
+		}
 
-			NameBuilderInfo info = new BuilderInfoImpl(matcher);
-			builder.execute(info);
+		env.writeln("Failed to rename " + outcome.failures.size()
+				+ " files, reverting the renaming:");
+		outcome.failures.stream().limit(MAX_LISTED_FAILURES)
+				.forEach(env::writeln);
+		// the output is buffered, so the failures are shown before reverting
+		env.flush();
+		Outcome rollback = transaction.undo(parallelism);
+		if (rollback.failures.isEmpty()) {
+			transaction.deleteJournal();
+			env.writeln("Restored " + rollback.moved.get() + " files.");
+		} else {
+			reportUndoFailures(rollback);
+		}
+	}
 
-			String novoIme = info.getStringBuilder().toString();
-			System.out.println(file.getName() + " => " + novoIme);
-			oldToNew.put(file, novoIme);
+	/**
+	 * Reverts the most recent renaming into the destination directory, using
+	 * the journal written by the execute subcommand. The journal is deleted
+	 * once all of the files are restored.
+	 *
+	 * @throws IOException
+	 *             if the journal can not be deleted
+	 */
+	private void undo() throws IOException {
+		RenameTransaction transaction;
+		try {
+			transaction = RenameTransaction.readJournal(output);
+		} catch (NoSuchFileException ex) {
+			env.writeln("There is no renaming to undo in " + output + ".");
+			return;
+		} catch (IOException ex) {
+			env.writeln("Could not read the journal: " + ex.getMessage());
+			return;
 		}
-		return oldToNew;
 
+		if (!transaction.getSource()
+				.equals(input.toAbsolutePath().normalize())) {
+			env.writeln("The last renaming into " + output + " was from "
+					+ transaction.getSource() + ".");
+			return;
+		}
+
+		long start = System.nanoTime();
+		Outcome outcome = transaction.undo(parallelism);
+		env.writeln(String.format("Restored %d files in %.3f s, skipped %d.",
+				outcome.moved.get(), (System.nanoTime() - start) / 1e9,
+				outcome.skipped.get()));
+
+		if (outcome.failures.isEmpty()) {
+			transaction.deleteJournal();
+		} else {
+			reportUndoFailures(outcome);
+		}
 	}
 
 	/**
-	 * Executes the mass renaming command.
-	 * 
+	 * Reports the files which could not be moved back, and keeps the journal
+	 * so reverting can be retried.
+	 *
+	 * @param outcome
+	 *            the outcome of reverting
+	 */
+	private void reportUndoFailures(Outcome outcome) {
+		env.writeln("Failed to restore " + outcome.failures.size()
+				+ " files; the journal is kept, so the undo subcommand"
+				+ " can be retried:");
+		outcome.failures.stream().limit(MAX_LISTED_FAILURES)
+				.forEach(env::writeln);
+	}
+
+	/**
+	 * Builds the new names of all of the matching files. Unless the name
+	 * expression uses counters or the data of the files, the names are built
+	 * while the directory is streamed. Otherwise, the matches are collected
+	 * first, sorted by name if counters are used, and the names are built by
+	 * a {@link ForkJoinPool}.
+	 *
+	 * @param builder
+	 *            the compiled name expression
+	 * @param action
+	 *            receives the old and the new name of each file, in order
+	 * @return false if the data of a file could not be read
 	 * @throws IOException
-	 *             in case the moving process goes awry
+	 *             in case reading the source directory goes awry
 	 */
-	private void execute() throws IOException {
+	private boolean buildNames(CompiledNameBuilder builder,
+			BiConsumer<String, String> action) throws IOException {
+		if (!builder.usesCounters() && !builder.usesFileData()) {
+			BuilderInfoImpl info = new BuilderInfoImpl(input);
+			filter((file, name, result) -> {
+				builder.execute(info.reset(name, result, 0));
+				action.accept(name, info.getStringBuilder().toString());
+			});
+			return true;
+		}
 
-		Map<File, String> oldToNew = show();
+		MatchedFiles files = new MatchedFiles(pattern.matcher("").groupCount());
+		filter((file, name, result) -> files.add(name, result));
+		if (builder.usesCounters()) {
+			files.sortByName();
+		}
 
- 		if(oldToNew == null) return;
-		
-		oldToNew.forEach((file, newFile) -> {
-			Path newPath = Paths.get(output.toString() + "/" + newFile);
-			try {
-				Files.move(file.toPath(), newPath);
-			} catch (IOException e) {
-				env.writeln("Error moving file: " + file.toString());
+		String[] newNames = new String[files.size];
+		ForkJoinPool pool = new ForkJoinPool(
+				builder.usesFileData() ? parallelism : 1);
+		try {
+			pool.invoke(new BuildTask(builder, files, input, newNames, 0,
+					files.size));
+		} catch (UncheckedIOException ex) {
+			env.writeln("Could not read a file: " + ex.getCause());
+			return false;
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int i = 0; i < files.size; i++) {
+			action.accept(files.names[i], newNames[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Receives the entries matched by {@link MassRenameShellCommand#filter}.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	private interface MatchAction {
+		/**
+		 * Called for each matching entry of the source directory.
+		 *
+		 * @param file
+		 *            the matching entry
+		 * @param name
+		 *            the name of the entry
+		 * @param result
+		 *            the result of matching the entry's name, valid only
+		 *            during the call
+		 */
+		void matched(Path file, String name, MatchResult result);
+	}
+
+	/**
+	 * The names of the matching files and the bounds of their groups, kept in
+	 * flat arrays.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class MatchedFiles {
+		/**
+		 * The number of groups of each match, including the whole match.
+		 */
+		private final int groups;
+		/**
+		 * The names of the files.
+		 */
+		String[] names = new String[16];
+		/**
+		 * The start and the end of each group of each file, -1 if the group
+		 * did not match.
+		 */
+		int[] bounds;
+		/**
+		 * The number of files.
+		 */
+		int size;
+
+		/**
+		 * Constructs a new, empty {@link MatchedFiles}.
+		 *
+		 * @param groupCount
+		 *            the number of capturing groups of the pattern
+		 */
+		MatchedFiles(int groupCount) {
+			this.groups = groupCount + 1;
+			this.bounds = new int[names.length * 2 * groups];
+		}
+
+		/**
+		 * Adds a matching file.
+		 *
+		 * @param name
+		 *            the name of the file
+		 * @param result
+		 *            the result of matching the name
+		 */
+		void add(String name, MatchResult result) {
+			if (size == names.length) {
+				names = Arrays.copyOf(names, size * 2);
+				bounds = Arrays.copyOf(bounds, bounds.length * 2);
 			}
-		});
+			names[size] = name;
+			for (int i = 0, offset = size * 2 * groups; i < groups; i++) {
+				bounds[offset++] = result.start(i);
+				bounds[offset++] = result.end(i);
+			}
+			size++;
+		}
+
+		/**
+		 * Sorts the files by their names.
+		 */
+		void sortByName() {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+
+			String[] sortedNames = new String[names.length];
+			int[] sortedBounds = new int[bounds.length];
+			int length = 2 * groups;
+			for (int i = 0; i < size; i++) {
+				sortedNames[i] = names[order[i]];
+				System.arraycopy(bounds, order[i] * length, sortedBounds,
+						i * length, length);
+			}
+			names = sortedNames;
+			bounds = sortedBounds;
+		}
 	}
 
 	/**
+	 * A view of the match of a single file in {@link MatchedFiles}, which can
+	 * be moved from one file to another.
+	 *
 	 * @author 0036502252
 	 *
 	 */
+	static class StoredMatch implements MatchResult {
+		/**
+		 * The matching files.
+		 */
+		private MatchedFiles files;
+		/**
+		 * The offset of the file's bounds.
+		 */
+		private int offset;
+		/**
+		 * The index of the file.
+		 */
+		private int index;
+
+		/**
+		 * Constructs a new {@link StoredMatch}.
+		 *
+		 * @param files
+		 *            the matching files
+		 */
+		StoredMatch(MatchedFiles files) {
+			this.files = files;
+		}
+
+		/**
+		 * Moves this view to another file.
+		 *
+		 * @param index
+		 *            the index of the file
+		 * @return this view
+		 */
+		StoredMatch at(int index) {
+			this.index = index;
+			this.offset = index * 2 * files.groups;
+			return this;
+		}
+
+		@Override
+		public int start() {
+			return start(0);
+		}
+
+		@Override
+		public int start(int group) {
+			return files.bounds[offset + 2 * checkGroup(group)];
+		}
+
+		@Override
+		public int end() {
+			return end(0);
+		}
+
+		@Override
+		public int end(int group) {
+			return files.bounds[offset + 2 * checkGroup(group) + 1];
+		}
+
+		@Override
+		public String group() {
+			return group(0);
+		}
+
+		@Override
+		public String group(int group) {
+			int start = start(group);
+			return start < 0 ? null
+					: files.names[index].substring(start, end(group));
+		}
+
+		@Override
+		public int groupCount() {
+			return files.groups - 1;
+		}
+
+		/**
+		 * @param group
+		 *            the index of a group
+		 * @return the index of the group
+		 * @throws IndexOutOfBoundsException
+		 *             if there is no such group
+		 */
+		private int checkGroup(int group) {
+			if (group < 0 || group >= files.groups) {
+				throw new IndexOutOfBoundsException("No group " + group);
+			}
+			return group;
+		}
+	}
+
 	/**
-	 * A simple implementation of a {@link NameBuilderInfo} object.
+	 * Builds the new names of a range of the matching files, splitting it
+	 * between forked tasks if it is large.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class BuildTask extends RecursiveAction {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = -4870519618263925121L;
+		/**
+		 * Ranges with at most this many files are built without splitting.
+		 */
+		private static final int THRESHOLD = 16;
+		/**
+		 * The compiled name expression.
+		 */
+		private transient CompiledNameBuilder builder;
+		/**
+		 * The matching files.
+		 */
+		private transient MatchedFiles files;
+		/**
+		 * The directory holding the files.
+		 */
+		private transient Path directory;
+		/**
+		 * Receives the new names, in the order of the files.
+		 */
+		private transient String[] newNames;
+		/**
+		 * The index of the first file in the range, inclusive.
+		 */
+		private int from;
+		/**
+		 * The index of the last file in the range, exclusive.
+		 */
+		private int to;
+
+		/**
+		 * Constructs a new {@link BuildTask}.
+		 *
+		 * @param builder
+		 *            the compiled name expression
+		 * @param files
+		 *            the matching files
+		 * @param directory
+		 *            the directory holding the files
+		 * @param newNames
+		 *            receives the new names, in the order of the files
+		 * @param from
+		 *            the index of the first file in the range, inclusive
+		 * @param to
+		 *            the index of the last file in the range, exclusive
+		 */
+		BuildTask(CompiledNameBuilder builder, MatchedFiles files,
+				Path directory, String[] newNames, int from, int to) {
+			this.builder = builder;
+			this.files = files;
+			this.directory = directory;
+			this.newNames = newNames;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new BuildTask(builder, files, directory, newNames, from,
+								middle),
+						new BuildTask(builder, files, directory, newNames,
+								middle, to));
+				return;
+			}
+
+			BuilderInfoImpl info = new BuilderInfoImpl(directory);
+			StoredMatch match = new StoredMatch(files);
+			for (int i = from; i < to; i++) {
+				builder.execute(info.reset(files.names[i], match.at(i), i));
+				newNames[i] = info.getStringBuilder().toString();
+			}
+		}
+	}
+
+	/**
+	 * A simple implementation of a {@link NameBuilderInfo} object. A single
+	 * instance is reused for many files, and the groups are appended directly
+	 * from the old filename, without creating substrings. The attributes and
+	 * the digest of a file are read only when they are requested. It is
+	 * public so that the tests and the benchmarks build names the same way.
 	 * 
 	 * @author 0036502252
 	 *
 	 */
-	static class BuilderInfoImpl implements NameBuilderInfo {
+	public static class BuilderInfoImpl implements NameBuilderInfo {
+		/**
+		 * The size of the buffer used for reading files.
+		 */
+		private static final int BUFFER_SIZE = 64 * 1024;
 		/**
 		 * Used for creating a new filename.
 		 */
 		private StringBuilder sb;
 		/**
-		 * The matcher used for regex group indexing.
+		 * The directory holding the files.
+		 */
+		private Path directory;
+		/**
+		 * The old filename.
+		 */
+		private CharSequence name;
+		/**
+		 * The result of matching the old filename, used for regex group
+		 * indexing.
+		 */
+		private MatchResult result;
+		/**
+		 * The position of the file among the renamed files.
+		 */
+		private long index;
+		/**
+		 * The attributes of the file, or null if they have not been read.
+		 */
+		private BasicFileAttributes attributes;
+		/**
+		 * The digest of the file, or null if it has not been computed.
+		 */
+		private byte[] sha256;
+		/**
+		 * Computes the digests, created when it is first needed.
 		 */
-		private Matcher matcher;
+		private MessageDigest digest;
+		/**
+		 * The buffer used for reading files, created when it is first needed.
+		 */
+		private ByteBuffer buffer;
 
 		/**
 		 * Constructs a new {@link BuilderInfoImpl}.
 		 * 
-		 * @param matcher
-		 *            the matcher used for regex group indexing
+		 * @param directory
+		 *            the directory holding the files
 		 */
-		public BuilderInfoImpl(Matcher matcher) {
-			this.matcher = matcher;
+		public BuilderInfoImpl(Path directory) {
+			this.directory = directory;
 			this.sb = new StringBuilder();
 		}
 
+		/**
+		 * Prepares this object for building the new name of another file,
+		 * clearing the previous name.
+		 * 
+		 * @param name
+		 *            the old filename
+		 * @param result
+		 *            the result of matching the old filename
+		 * @param index
+		 *            the position of the file among the renamed files
+		 * @return this object
+		 */
+		public BuilderInfoImpl reset(CharSequence name, MatchResult result,
+				long index) {
+			this.name = name;
+			this.result = result;
+			this.index = index;
+			this.attributes = null;
+			this.sha256 = null;
+			sb.setLength(0);
+			return this;
+		}
+
 		@Override
 		public StringBuilder getStringBuilder() {
 			return sb;
 		}
 
 		/**
-		 * Uses the matcher to return a substring from the desired group index.<
+		 * Uses the matcher to return a substring from the desired group index.
 		 */
 		@Override
 		public String getGroup(int index) {
-			return matcher.group(index);
+			return result.group(index);
+		}
+
+		@Override
+		public int getGroupLength(int index) {
+			int start = result.start(index);
+			return start < 0 ? 0 : result.end(index) - start;
+		}
+
+		@Override
+		public void appendGroup(int index) {
+			int start = result.start(index);
+			if (start >= 0) {
+				sb.append(name, start, result.end(index));
+			}
+		}
+
+		@Override
+		public long getIndex() {
+			return index;
+		}
+
+		@Override
+		public BasicFileAttributes getAttributes() {
+			if (attributes == null) {
+				try {
+					attributes = Files.readAttributes(file(),
+							BasicFileAttributes.class);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			return attributes;
+		}
+
+		@Override
+		public byte[] getSha256() {
+			if (sha256 != null) {
+				return sha256;
+			}
+
+			if (digest == null) {
+				try {
+					digest = MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException ex) {
+					throw new IllegalStateException(ex);
+				}
+				buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+
+			try (FileChannel channel = FileChannel.open(file())) {
+				buffer.clear();
+				while (channel.read(buffer) >= 0) {
+					digest.update(buffer.array(), 0, buffer.position());
+					buffer.clear();
+				}
+			} catch (IOException ex) {
+				digest.reset();
+				throw new UncheckedIOException(ex);
+			}
+			sha256 = digest.digest();
+			return sha256;
+		}
+
+		/**
+		 * @return the path of the file
+		 */
+		private Path file() {
+			return directory.resolve(name.toString());
 		}
 
 	}
@@ -43,7 +43,7 @@ public class MkdirShellCommand implements ShellCommand {
 	public ShellStatus executeCommand(Environment env, String arguments) {
 		String path = null;
 		try {
-			path = new ShellCommandParser(arguments).parsePath()[0].trim();
+			path = new ShellCommandParser(arguments).parsePath()[0];
 
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
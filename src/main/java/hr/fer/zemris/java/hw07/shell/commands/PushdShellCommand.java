@@ -51,7 +51,7 @@ public class PushdShellCommand implements ShellCommand {
 	public ShellStatus executeCommand(Environment env, String arguments) {
 		String str;
 		try {
-			str = new ShellCommandParser(arguments).parsePath()[0].trim();
+			str = new ShellCommandParser(arguments).parsePath()[0];
 
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
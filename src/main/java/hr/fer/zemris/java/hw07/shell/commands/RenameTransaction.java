@@ -0,0 +1,536 @@
+package hr.fer.zemris.java.hw07.shell.commands;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A renaming of files from a source directory into a destination directory,
+ * carried out as a single transaction. The whole plan is validated before
+ * anything is moved, and written to a journal in the destination directory
+ * ({@value #JOURNAL_NAME}) which is forced to the disk. The files are then
+ * moved in parallel, atomically where the file system supports it; if a move
+ * fails, the remaining moves are abandoned and the completed ones can be
+ * reverted by {@link #undo(int)}.
+ * <p>
+ * The journal holds a header followed by the old and the new name of every
+ * file, all terminated by NUL characters, which can not appear in file names.
+ * It is kept after a successful renaming, so the most recent renaming into a
+ * directory can be reverted later, even if it was interrupted.
+ *
+ * @author 0036502252
+ *
+ */
+class RenameTransaction {
+	/**
+	 * The name of the journal file in the destination directory.
+	 */
+	static final String JOURNAL_NAME = ".massrename.journal";
+	/**
+	 * The name of the temporary file to which the journal is written.
+	 */
+	private static final String TEMPORARY_JOURNAL_NAME = JOURNAL_NAME + ".tmp";
+	/**
+	 * The first entry of every journal.
+	 */
+	private static final String MAGIC = "massrename-journal-1";
+	/**
+	 * Terminates every entry of the journal.
+	 */
+	private static final char TERMINATOR = '\0';
+
+	/**
+	 * The directory holding the files before the renaming.
+	 */
+	private Path source;
+	/**
+	 * The directory holding the files after the renaming.
+	 */
+	private Path destination;
+	/**
+	 * The names of the files in the source directory.
+	 */
+	private List<String> oldNames = new ArrayList<>();
+	/**
+	 * The names of the files in the destination directory, in the order of
+	 * {@link #oldNames}.
+	 */
+	private List<String> newNames = new ArrayList<>();
+
+	/**
+	 * Constructs a new, empty {@link RenameTransaction}.
+	 *
+	 * @param source
+	 *            the directory holding the files before the renaming
+	 * @param destination
+	 *            the directory holding the files after the renaming
+	 */
+	RenameTransaction(Path source, Path destination) {
+		this.source = source.toAbsolutePath().normalize();
+		this.destination = destination.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Adds a file to the renaming.
+	 *
+	 * @param oldName
+	 *            the name of the file in the source directory
+	 * @param newName
+	 *            the name of the file in the destination directory
+	 */
+	void add(String oldName, String newName) {
+		oldNames.add(oldName);
+		newNames.add(newName);
+	}
+
+	/**
+	 * @return the number of renamed files
+	 */
+	int size() {
+		return oldNames.size();
+	}
+
+	/**
+	 * @return the absolute path of the directory holding the files before the
+	 *         renaming
+	 */
+	Path getSource() {
+		return source;
+	}
+
+	/**
+	 * Checks that the renaming can be carried out: no journal may be renamed,
+	 * every new name must be a plain file name, no two files may get the same
+	 * name, and no file of the destination directory may be overwritten. The
+	 * destination directory is listed once, instead of checking every new
+	 * name separately.
+	 *
+	 * @param maxProblems
+	 *            the number of problems after which the checking stops
+	 * @return the descriptions of the problems, empty if the renaming is valid
+	 * @throws IOException
+	 *             if the destination directory can not be listed
+	 */
+	List<String> validate(int maxProblems) throws IOException {
+		Set<String> existing = new HashSet<>();
+		boolean inPlace = false;
+		if (Files.isDirectory(destination)) {
+			try (DirectoryStream<Path> stream = Files
+					.newDirectoryStream(destination)) {
+				for (Path file : stream) {
+					existing.add(file.getFileName().toString());
+				}
+			}
+			inPlace = Files.isSameFile(source, destination);
+		}
+
+		List<String> problems = new ArrayList<>();
+		Map<String, String> targets = new HashMap<>();
+		for (int i = 0, n = size(); i < n
+				&& problems.size() < maxProblems; i++) {
+			String oldName = oldNames.get(i);
+			String newName = newNames.get(i);
+
+			if (isJournalName(oldName)) {
+				problems.add(oldName
+						+ ": the journal of a renaming can not be renamed");
+				continue;
+			}
+			if (!isValidName(newName)) {
+				problems.add(
+						oldName + ": invalid new name \"" + newName + "\"");
+				continue;
+			}
+			String previous = targets.putIfAbsent(newName, oldName);
+			if (previous != null) {
+				problems.add(previous + " and " + oldName
+						+ " would both be renamed to " + newName);
+			} else if (existing.contains(newName)
+					&& !(inPlace && newName.equals(oldName))) {
+				problems.add(oldName + ": " + newName + " already exists");
+			}
+		}
+		return problems;
+	}
+
+	/**
+	 * Writes the journal to the destination directory, which must exist, and
+	 * forces it to the disk. The journal is written to a temporary file first,
+	 * so a crash never leaves a partially written journal behind.
+	 *
+	 * @throws IOException
+	 *             if the journal can not be written
+	 */
+	void writeJournal() throws IOException {
+		Path temporary = destination.resolve(TEMPORARY_JOURNAL_NAME);
+		try (FileChannel channel = FileChannel.open(temporary,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				Writer writer = new BufferedWriter(Channels.newWriter(channel,
+						StandardCharsets.UTF_8.newEncoder(), -1))) {
+			writeEntry(writer, MAGIC);
+			writeEntry(writer, source.toString());
+			writeEntry(writer, destination.toString());
+			writeEntry(writer, Integer.toString(size()));
+			for (int i = 0, n = size(); i < n; i++) {
+				writeEntry(writer, oldNames.get(i));
+				writeEntry(writer, newNames.get(i));
+			}
+
+			writer.flush();
+			channel.force(true);
+		}
+
+		Path journal = destination.resolve(JOURNAL_NAME);
+		try {
+			Files.move(temporary, journal, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temporary, journal, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads the journal of the most recent renaming into a directory.
+	 *
+	 * @param destination
+	 *            the destination directory of the renaming
+	 * @return the renaming described by the journal
+	 * @throws java.nio.file.NoSuchFileException
+	 *             if there is no journal in the directory
+	 * @throws IOException
+	 *             if the journal can not be read or is damaged
+	 */
+	static RenameTransaction readJournal(Path destination) throws IOException {
+		try (Reader reader = Files.newBufferedReader(
+				destination.resolve(JOURNAL_NAME), StandardCharsets.UTF_8)) {
+			StringBuilder sb = new StringBuilder();
+			if (!MAGIC.equals(readEntry(reader, sb))) {
+				throw new IOException("Not a massrename journal!");
+			}
+
+			RenameTransaction transaction;
+			int size;
+			try {
+				transaction = new RenameTransaction(
+						Paths.get(readEntry(reader, sb)),
+						Paths.get(readEntry(reader, sb)));
+				size = Integer.parseInt(readEntry(reader, sb));
+			} catch (InvalidPathException | NumberFormatException ex) {
+				throw new IOException("The journal header is damaged!", ex);
+			}
+
+			for (int i = 0; i < size; i++) {
+				transaction.add(readEntry(reader, sb), readEntry(reader, sb));
+			}
+			return transaction;
+		}
+	}
+
+	/**
+	 * Deletes the journal from the destination directory, if it exists.
+	 *
+	 * @throws IOException
+	 *             if the journal can not be deleted
+	 */
+	void deleteJournal() throws IOException {
+		Files.deleteIfExists(destination.resolve(JOURNAL_NAME));
+	}
+
+	/**
+	 * Moves the files into the destination directory. The first failure stops
+	 * all of the workers.
+	 *
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @return the outcome of the renaming
+	 */
+	Outcome execute(int parallelism) {
+		return run(parallelism, false);
+	}
+
+	/**
+	 * Moves the files back into the source directory. A file is only moved
+	 * back if it is present in the destination directory and its old name is
+	 * free, so a partially completed renaming can be reverted as well; all of
+	 * the other files are skipped.
+	 *
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @return the outcome of the reverting
+	 */
+	Outcome undo(int parallelism) {
+		return run(parallelism, true);
+	}
+
+	/**
+	 * Moves the files using a {@link ForkJoinPool}.
+	 *
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @param backwards
+	 *            true if the files are moved back into the source directory
+	 * @return the outcome of the moving
+	 */
+	private Outcome run(int parallelism, boolean backwards) {
+		Outcome outcome = new Outcome();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new MoveTask(this, outcome, backwards, 0, size()));
+		} finally {
+			pool.shutdown();
+		}
+		return outcome;
+	}
+
+	/**
+	 * Moves a file, atomically if the file system supports it. An atomic move
+	 * is a rename(2) on POSIX systems, which silently replaces an existing
+	 * target, so the target is checked to be absent right before the move.
+	 * This narrows, but does not close, the window in which a file created by
+	 * another process after {@link #validate(int)} could be replaced, since
+	 * there is no portable way to rename without replacing.
+	 *
+	 * @param from
+	 *            the file to be moved
+	 * @param to
+	 *            the new path of the file
+	 * @throws FileAlreadyExistsException
+	 *             if a different file already exists at the new path
+	 * @throws IOException
+	 *             if the file can not be moved
+	 */
+	private static void move(Path from, Path to) throws IOException {
+		if (from.equals(to)) {
+			return;
+		}
+		if (Files.exists(to, LinkOption.NOFOLLOW_LINKS)
+				&& !Files.isSameFile(from, to)) {
+			throw new FileAlreadyExistsException(to.toString());
+		}
+
+		try {
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(from, to);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of a file
+	 * @return true if the name is the name of the journal, or of the
+	 *         temporary file to which it is written
+	 */
+	static boolean isJournalName(String name) {
+		return name.equals(JOURNAL_NAME)
+				|| name.equals(TEMPORARY_JOURNAL_NAME);
+	}
+
+	/**
+	 * @param name
+	 *            the new name of a file
+	 * @return true if the name is a plain file name, which is not reserved for
+	 *         the journal
+	 */
+	private boolean isValidName(String name) {
+		if (name.isEmpty() || name.equals(".") || name.equals("..")
+				|| name.startsWith(JOURNAL_NAME)
+				|| name.indexOf(TERMINATOR) >= 0) {
+			return false;
+		}
+
+		try {
+			Path path = destination.resolve(name);
+			return destination.equals(path.getParent())
+					&& path.getFileName().toString().equals(name);
+		} catch (InvalidPathException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a single entry of the journal.
+	 *
+	 * @param writer
+	 *            the writer of the journal
+	 * @param entry
+	 *            the entry
+	 * @throws IOException
+	 *             in case writing goes awry
+	 */
+	private static void writeEntry(Writer writer, String entry)
+			throws IOException {
+		writer.write(entry);
+		writer.write(TERMINATOR);
+	}
+
+	/**
+	 * Reads a single entry of the journal.
+	 *
+	 * @param reader
+	 *            the reader of the journal
+	 * @param sb
+	 *            a buffer reused by all of the entries
+	 * @return the entry
+	 * @throws IOException
+	 *             if the journal ends before the entry is terminated
+	 */
+	private static String readEntry(Reader reader, StringBuilder sb)
+			throws IOException {
+		sb.setLength(0);
+		for (int c = reader.read(); c != TERMINATOR; c = reader.read()) {
+			if (c < 0) {
+				throw new IOException("The journal is incomplete!");
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The counters shared by all of the tasks of a single moving.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class Outcome {
+		/**
+		 * The number of moved files.
+		 */
+		final AtomicInteger moved = new AtomicInteger();
+		/**
+		 * The number of files which were not moved back.
+		 */
+		final AtomicInteger skipped = new AtomicInteger();
+		/**
+		 * The descriptions of the failed moves.
+		 */
+		final Queue<String> failures = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Moves a range of the files, splitting it between forked tasks if it is
+	 * large.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class MoveTask extends RecursiveAction {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = 3215683390372436530L;
+		/**
+		 * Ranges with at most this many files are moved without splitting.
+		 */
+		private static final int THRESHOLD = 64;
+		/**
+		 * The renaming whose files are moved.
+		 */
+		private transient RenameTransaction transaction;
+		/**
+		 * The counters of the moving.
+		 */
+		private transient Outcome outcome;
+		/**
+		 * True if the files are moved back into the source directory.
+		 */
+		private boolean backwards;
+		/**
+		 * The index of the first file in the range, inclusive.
+		 */
+		private int from;
+		/**
+		 * The index of the last file in the range, exclusive.
+		 */
+		private int to;
+
+		/**
+		 * Constructs a new {@link MoveTask}.
+		 *
+		 * @param transaction
+		 *            the renaming whose files are moved
+		 * @param outcome
+		 *            the counters of the moving
+		 * @param backwards
+		 *            true if the files are moved back into the source
+		 *            directory
+		 * @param from
+		 *            the index of the first file in the range, inclusive
+		 * @param to
+		 *            the index of the last file in the range, exclusive
+		 */
+		MoveTask(RenameTransaction transaction, Outcome outcome,
+				boolean backwards, int from, int to) {
+			this.transaction = transaction;
+			this.outcome = outcome;
+			this.backwards = backwards;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new MoveTask(transaction, outcome, backwards, from,
+								middle),
+						new MoveTask(transaction, outcome, backwards, middle,
+								to));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				if (!backwards && !outcome.failures.isEmpty()) {
+					return;
+				}
+
+				Path oldPath = transaction.source
+						.resolve(transaction.oldNames.get(i));
+				Path newPath = transaction.destination
+						.resolve(transaction.newNames.get(i));
+				try {
+					if (!backwards) {
+						move(oldPath, newPath);
+					} else if (Files.exists(newPath, LinkOption.NOFOLLOW_LINKS)
+							&& Files.notExists(oldPath,
+								LinkOption.NOFOLLOW_LINKS)) {
+						move(newPath, oldPath);
+					} else {
+						outcome.skipped.incrementAndGet();
+						continue;
+					}
+					outcome.moved.incrementAndGet();
+				} catch (IOException ex) {
+					outcome.failures.add(oldPath + ": " + ex);
+				}
+			}
+		}
+	}
+}
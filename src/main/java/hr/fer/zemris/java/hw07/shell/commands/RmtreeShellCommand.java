@@ -1,10 +1,19 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
@@ -12,11 +21,19 @@ import hr.fer.zemris.java.hw07.shell.ShellStatus;
 
 /**
  * A shell command which recursively deletes a directory and all its contents.
- * 
+ *
  * @author 0036502252
  *
  */
 public class RmtreeShellCommand implements ShellCommand {
+	/**
+	 * The option which sets the number of worker threads.
+	 */
+	private static final String JOBS_OPTION = "-j";
+	/**
+	 * The maximum number of failures which are listed after deleting.
+	 */
+	private static final int MAX_LISTED_FAILURES = 10;
 	/**
 	 * The name of this command.
 	 */
@@ -34,38 +51,80 @@ public class RmtreeShellCommand implements ShellCommand {
 		List<String> list = new ArrayList<>();
 		list.add(
 				"Takes a single argument – directory - and deletes all of its contents.");
+		list.add("The files are deleted in parallel; the number of worker "
+				+ "threads can be set with the option " + JOBS_OPTION + " N.");
 		description = Collections.unmodifiableList(list);
 	}
 
 	/**
-	 * Takes a single argument, which is the path to a directory, and 
+	 * Takes a single argument, which is the path to a directory, and
 	 * deletes it.
 	 * @param env the shell environment
 	 * @param arguments the arguments which the user sends to the shell
 	 */
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String path = null;
+		CommandOptions options;
 		try {
-			path = new ShellCommandParser(arguments).parsePath()[0].trim();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					JOBS_OPTION);
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
-		File f = env.getCurrentDirectory().resolve(path).toFile();
+		if (options.getPositional().size() != 1) {
+			env.writeln("Error! \"rmtree\" command expects 1 argument.");
+			return ShellStatus.CONTINUE;
+		}
+
+		int parallelism;
+		try {
+			parallelism = options.getPositiveInt(JOBS_OPTION,
+					Runtime.getRuntime().availableProcessors());
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
+		}
+
+		Path dir;
+		try {
+			dir = env.getCurrentDirectory()
+					.resolve(options.getPositional().get(0));
+		} catch (InvalidPathException ex) {
+			env.writeln("Invalid path!");
+			return ShellStatus.CONTINUE;
+		}
 
-		if (!f.isDirectory()) {
-			env.writeln("The path " + f.toPath()
-					+ " does not represent a directory.");
+		if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+			env.writeln("The path " + dir + " does not represent a directory.");
 			return ShellStatus.CONTINUE;
 		}
 
+		long start = System.nanoTime();
+		DeleteJob job = new DeleteJob();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
 		try {
-			traverse(f);
-		} catch (IOException ex) {
-			env.writeln("Could not generate tree: " + ex.getMessage());
+			pool.invoke(new DeleteDirectoryTask(job, dir));
+		} finally {
+			pool.shutdown();
+		}
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		env.writeln(String.format(
+				"Deleted %d files and %d directories in %.3f s.",
+				job.deletedFiles.get(), job.deletedDirectories.get(),
+				elapsed));
+
+		if (!job.failures.isEmpty()) {
+			env.writeln("Failed to delete " + job.failures.size() + " paths:");
+			job.failures.stream().limit(MAX_LISTED_FAILURES)
+					.forEach(env::writeln);
 		}
 
 		return ShellStatus.CONTINUE;
@@ -82,29 +141,158 @@ public class RmtreeShellCommand implements ShellCommand {
 	}
 
 	/**
-	 * Recursively deletes a folder and all of its contents.
-	 * 
-	 * @param dir
-	 *            the root of the directory
-	 * @throws IOException
+	 * The counters shared by all of the tasks of a single deletion.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class DeleteJob {
+		/**
+		 * The number of deleted files.
+		 */
+		final AtomicLong deletedFiles = new AtomicLong();
+		/**
+		 * The number of deleted directories.
+		 */
+		final AtomicLong deletedDirectories = new AtomicLong();
+		/**
+		 * The descriptions of the failed deletions.
+		 */
+		final Queue<String> failures = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Deletes a directory and all of its contents. The directory is listed
+	 * exactly once; its subdirectories and batches of its files are deleted
+	 * by forked tasks, and the directory itself is deleted after all of them
+	 * complete. Symbolic links are deleted, never followed.
+	 *
+	 * @author 0036502252
+	 *
 	 */
-	public static void traverse(File dir) throws IOException {
-		if (dir.listFiles() == null)
-			return;
+	static class DeleteDirectoryTask extends RecursiveAction {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = 5407366522734306398L;
+		/**
+		 * The number of files deleted by a single forked task.
+		 */
+		private static final int BATCH_SIZE = 64;
+		/**
+		 * The counters of the deletion.
+		 */
+		private transient DeleteJob job;
+		/**
+		 * The directory to be deleted.
+		 */
+		private transient Path dir;
+
+		/**
+		 * Constructs a new {@link DeleteDirectoryTask}.
+		 *
+		 * @param job
+		 *            the counters of the deletion
+		 * @param dir
+		 *            the directory to be deleted
+		 */
+		DeleteDirectoryTask(DeleteJob job, Path dir) {
+			this.job = job;
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			List<RecursiveAction> subtasks = new ArrayList<>();
+			List<Path> batch = new ArrayList<>(BATCH_SIZE);
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path child : stream) {
+					if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+						subtasks.add(fork(new DeleteDirectoryTask(job, child)));
+						continue;
+					}
+
+					batch.add(child);
+					if (batch.size() == BATCH_SIZE) {
+						subtasks.add(fork(new DeleteFilesTask(job, batch)));
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				}
+			} catch (IOException ex) {
+				job.failures.add(dir + ": " + ex);
+			}
 
-		File[] children = dir.listFiles();
+			// the last batch is deleted by this thread
+			new DeleteFilesTask(job, batch).compute();
+			for (RecursiveAction task : subtasks) {
+				task.join();
+			}
+
+			try {
+				Files.delete(dir);
+				job.deletedDirectories.incrementAndGet();
+			} catch (IOException ex) {
+				job.failures.add(dir + ": " + ex);
+			}
+		}
+
+		/**
+		 * Forks the given task.
+		 *
+		 * @param task
+		 *            the task to be forked
+		 * @return the forked task
+		 */
+		private static RecursiveAction fork(RecursiveAction task) {
+			task.fork();
+			return task;
+		}
+	}
 
-		if (children != null) {
-			for (File f : dir.listFiles()) {
+	/**
+	 * Deletes a batch of files which are not directories.
+	 *
+	 * @author 0036502252
+	 *
+	 */
+	static class DeleteFilesTask extends RecursiveAction {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = -8436410815733322946L;
+		/**
+		 * The counters of the deletion.
+		 */
+		private transient DeleteJob job;
+		/**
+		 * The files to be deleted.
+		 */
+		private transient List<Path> files;
 
-				if (f.isFile()) {
-					f.delete();
+		/**
+		 * Constructs a new {@link DeleteFilesTask}.
+		 *
+		 * @param job
+		 *            the counters of the deletion
+		 * @param files
+		 *            the files to be deleted
+		 */
+		DeleteFilesTask(DeleteJob job, List<Path> files) {
+			this.job = job;
+			this.files = files;
+		}
 
-				} else if (f.isDirectory()) {
-					traverse(f);
+		@Override
+		protected void compute() {
+			for (Path file : files) {
+				try {
+					Files.delete(file);
+					job.deletedFiles.incrementAndGet();
+				} catch (IOException ex) {
+					job.failures.add(file + ": " + ex);
 				}
 			}
 		}
-		dir.delete(); // delete the root folder when done
 	}
 }
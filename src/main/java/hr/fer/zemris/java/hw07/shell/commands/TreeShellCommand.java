@@ -1,21 +1,63 @@
 package hr.fer.zemris.java.hw07.shell.commands;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import hr.fer.zemris.java.hw07.shell.Environment;
 import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
 import hr.fer.zemris.java.hw07.shell.ShellStatus;
 
 /**
- * Recursively prints a tree, with the given argument as the root.
+ * Prints a tree, with the given argument as the root.
  * @author 0036502252
  *
  */
 public class TreeShellCommand implements ShellCommand {
+	/**
+	 * The option which limits the depth of the printed tree.
+	 */
+	private static final String DEPTH_OPTION = "--depth";
+	/**
+	 * The flag which omits files from the printed tree.
+	 */
+	private static final String DIRS_ONLY_FLAG = "--dirs-only";
+	/**
+	 * The flag which prints the sizes of the heaviest subtrees instead of the
+	 * tree.
+	 */
+	private static final String SUMMARY_FLAG = "--summary";
+	/**
+	 * The option which sets the number of subtrees shown in the summary.
+	 */
+	private static final String TOP_OPTION = "--top";
+	/**
+	 * The option which sets the number of worker threads of the summary.
+	 */
+	private static final String JOBS_OPTION = "-j";
+	/**
+	 * The number of subtrees shown in the summary by default.
+	 */
+	private static final int DEFAULT_TOP = 10;
+	/**
+	 * The number of spaces by which each level of the tree is shifted.
+	 */
+	private static final int INDENT = 2;
 	/**
 	 * The name of this command.
 	 */
@@ -33,32 +75,71 @@ public class TreeShellCommand implements ShellCommand {
 		List<String> list = new ArrayList<>();
 		list.add(
 				"Takes a single argument – directory – prints a tree (each directory level shifts output two characters to the right).");
+		list.add("The option " + DEPTH_OPTION + " N prints only N levels "
+				+ "below the directory.");
+		list.add("The flag " + DIRS_ONLY_FLAG + " prints only directories.");
+		list.add("The flag " + SUMMARY_FLAG + " instead prints the total size "
+				+ "and file count, and the " + TOP_OPTION + " K (default "
+				+ DEFAULT_TOP + ") heaviest subtrees.");
+		list.add("The summary is computed in parallel; the number of worker "
+				+ "threads can be set with " + JOBS_OPTION + " N.");
 		description = Collections.unmodifiableList(list);
 	}
 
 	@Override
 	public ShellStatus executeCommand(Environment env, String arguments) {
-		String path = null;
+		CommandOptions options;
 		try {
-			path = new ShellCommandParser(arguments).parsePath()[0].trim();
+			options = new CommandOptions(
+					new ShellCommandParser(arguments).parsePath(),
+					new String[] { DIRS_ONLY_FLAG, SUMMARY_FLAG },
+					DEPTH_OPTION, TOP_OPTION, JOBS_OPTION);
 
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
+			return ShellStatus.CONTINUE;
 		} catch (RuntimeException ex) {
 			env.writeln("Could not parse the path.");
 			return ShellStatus.CONTINUE;
 		}
 
-		File f = env.getCurrentDirectory().resolve(path).toFile();
+		if (options.getPositional().size() != 1) {
+			env.writeln("Error! \"tree\" command expects a directory.");
+			return ShellStatus.CONTINUE;
+		}
 
-		if (!f.isDirectory()) {
-			env.writeln("The path " + f.toPath()
-					+ " does not represent a directory.");
+		long depth;
+		int top;
+		int parallelism;
+		try {
+			depth = options.getLong(DEPTH_OPTION, Long.MAX_VALUE);
+			top = (int) Math.min(options.getLong(TOP_OPTION, DEFAULT_TOP),
+					Integer.MAX_VALUE);
+			parallelism = options.getPositiveInt(JOBS_OPTION,
+					Runtime.getRuntime().availableProcessors());
+		} catch (IllegalArgumentException ex) {
+			env.writeln(ex.getMessage());
 			return ShellStatus.CONTINUE;
 		}
 
+		Path dir;
 		try {
-			generateTree(f, 0, env);
-		} catch (IOException ex) {
-			env.writeln("Could not generate tree: " + ex.getMessage());
+			dir = env.getCurrentDirectory()
+					.resolve(options.getPositional().get(0));
+		} catch (InvalidPathException ex) {
+			env.writeln("Invalid path!");
+			return ShellStatus.CONTINUE;
+		}
+
+		if (!Files.isDirectory(dir)) {
+			env.writeln("The path " + dir + " does not represent a directory.");
+			return ShellStatus.CONTINUE;
+		}
+
+		if (options.hasFlag(SUMMARY_FLAG)) {
+			summarize(dir, top, parallelism, env);
+		} else {
+			generateTree(dir, depth, options.hasFlag(DIRS_ONLY_FLAG), env);
 		}
 
 		return ShellStatus.CONTINUE;
@@ -75,49 +156,307 @@ public class TreeShellCommand implements ShellCommand {
 	}
 
 	/**
-	 * Recursively prints prints a tree.
-	 * @param dir the root of the directory
-	 * @param depth the current depth of the recursion(used for indentation)
-	 * @param env the environment used for I/O
-	 * @throws IOException 
+	 * Prints a tree. The tree is walked using an explicit stack instead of
+	 * recursion, so deep trees can not overflow the call stack, and each
+	 * directory is listed only once. Symbolic links to directories are
+	 * printed, but not followed.
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @param maxDepth
+	 *            the number of levels printed below the root
+	 * @param dirsOnly
+	 *            true if only directories are printed
+	 * @param env
+	 *            the environment used for output
 	 */
-	public static void generateTree(File dir, int depth, Environment env) throws IOException {
-		if (depth == 0) {
-			System.out.println(dir);
-		} else {
-			String spaces = generateWhitespaces(depth);
-			System.out.println(spaces + dir.getName());
+	public static void generateTree(Path root, long maxDepth,
+			boolean dirsOnly, Environment env) {
+		env.writeln(root.toString());
+		if (maxDepth == 0) {
+			return;
 		}
 
-		if (dir.listFiles() == null)
-			return;
+		List<String> indents = new ArrayList<>();
+		Deque<Level> stack = new ArrayDeque<>();
+		stack.push(new Level(root, 1, env));
+
+		while (!stack.isEmpty()) {
+			Level level = stack.peek();
+			if (level.index == level.children.size()) {
+				stack.pop();
+				continue;
+			}
 
-		depth += 2;
-		File[] children = dir.listFiles();
+			Path child = level.children.get(level.index);
+			boolean directory = level.directories.get(level.index);
+			level.index++;
+			if (dirsOnly && !directory) {
+				continue;
+			}
+
+			env.write(indent(indents, level.depth));
+			env.writeln(child.getFileName().toString());
+
+			if (directory && level.depth < maxDepth) {
+				stack.push(new Level(child, level.depth + 1, env));
+			}
+		}
+	}
+
+	/**
+	 * Prints the total size and file count of a tree, followed by its
+	 * heaviest subtrees. The subtrees are measured in parallel by a
+	 * {@link ForkJoinPool}.
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @param top
+	 *            the number of printed subtrees
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @param env
+	 *            the environment used for output
+	 */
+	public static void summarize(Path root, int top, int parallelism,
+			Environment env) {
+		long start = System.nanoTime();
+		Queue<Summary> summaries = new ConcurrentLinkedQueue<>();
+		Queue<String> failures = new ConcurrentLinkedQueue<>();
 
-		if (children != null) {
-			String spaces = generateWhitespaces(depth);
-			for (File f : dir.listFiles()) {
-				if (f.isFile()) {
-					env.writeln(spaces + f.getName());
-				} else if (f.isDirectory()) {
-					generateTree(f, depth, env);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Summary total;
+		try {
+			total = pool.invoke(new SummaryTask(root, summaries, failures));
+		} finally {
+			pool.shutdown();
+		}
+
+		env.writeln(String.format(
+				"%s: %d bytes in %d files and %d directories (%.3f s).", root,
+				total.bytes, total.files, total.directories,
+				(System.nanoTime() - start) / 1e9));
+
+		// keep only the heaviest subtrees, the lightest one at the head
+		Comparator<Summary> byBytes = Comparator.comparingLong(s -> s.bytes);
+		PriorityQueue<Summary> heaviest = new PriorityQueue<>(byBytes);
+		for (Summary summary : summaries) {
+			if (summary == total || top == 0) {
+				continue;
+			}
+			if (heaviest.size() < top) {
+				heaviest.add(summary);
+			} else if (summary.bytes > heaviest.peek().bytes) {
+				heaviest.poll();
+				heaviest.add(summary);
+			}
+		}
+
+		List<Summary> result = new ArrayList<>(heaviest);
+		result.sort(byBytes.reversed());
+		if (!result.isEmpty()) {
+			env.writeln(String.format("%15s %10s  %s", "bytes", "files",
+					"directory"));
+		}
+		for (Summary summary : result) {
+			env.writeln(String.format("%15d %10d  %s", summary.bytes,
+					summary.files, summary.dir));
+		}
+
+		if (!failures.isEmpty()) {
+			env.writeln("Could not read " + failures.size() + " paths, e.g. "
+					+ failures.peek());
+		}
+	}
+
+	/**
+	 * The totals of a subtree.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class Summary {
+		/**
+		 * The root of the subtree.
+		 */
+		final Path dir;
+		/**
+		 * The number of files in the subtree.
+		 */
+		long files;
+		/**
+		 * The number of directories in the subtree, excluding its root.
+		 */
+		long directories;
+		/**
+		 * The total size of the files in the subtree.
+		 */
+		long bytes;
+
+		/**
+		 * Constructs a new, empty {@link Summary}.
+		 * 
+		 * @param dir
+		 *            the root of the subtree
+		 */
+		Summary(Path dir) {
+			this.dir = dir;
+		}
+	}
+
+	/**
+	 * Computes the {@link Summary} of a subtree. Each subdirectory is measured
+	 * by a forked task, and the summary of every directory is collected.
+	 * Symbolic links are counted as files, never followed.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class SummaryTask extends RecursiveTask<Summary> {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = 2968395731529934122L;
+		/**
+		 * The root of the subtree.
+		 */
+		private transient Path dir;
+		/**
+		 * Collects the summaries of all directories.
+		 */
+		private transient Queue<Summary> summaries;
+		/**
+		 * Collects the paths which could not be read.
+		 */
+		private transient Queue<String> failures;
+
+		/**
+		 * Constructs a new {@link SummaryTask}.
+		 * 
+		 * @param dir
+		 *            the root of the subtree
+		 * @param summaries
+		 *            collects the summaries of all directories
+		 * @param failures
+		 *            collects the paths which could not be read
+		 */
+		SummaryTask(Path dir, Queue<Summary> summaries,
+				Queue<String> failures) {
+			this.dir = dir;
+			this.summaries = summaries;
+			this.failures = failures;
+		}
+
+		@Override
+		protected Summary compute() {
+			Summary summary = new Summary(dir);
+			List<SummaryTask> subtasks = new ArrayList<>();
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path child : stream) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(child,
+								BasicFileAttributes.class,
+								LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException ex) {
+						failures.add(child.toString());
+						continue;
+					}
+
+					if (attributes.isDirectory()) {
+						SummaryTask task = new SummaryTask(child, summaries,
+								failures);
+						task.fork();
+						subtasks.add(task);
+					} else {
+						summary.files++;
+						summary.bytes += attributes.size();
+					}
 				}
+			} catch (IOException ex) {
+				failures.add(dir.toString());
+			}
+
+			for (SummaryTask task : subtasks) {
+				Summary child = task.join();
+				summary.files += child.files;
+				summary.directories += child.directories + 1;
+				summary.bytes += child.bytes;
 			}
+
+			summaries.add(summary);
+			return summary;
 		}
 	}
 
 	/**
-	 * Utility method. Generates <code>n</code> whitespaces.
-	 * @param n the number of whitespaces to generate
-	 * @return a string consisting of <code>n</code> spaces
+	 * Gets the indentation of a level of the tree. The indentations are
+	 * cached, so each one is created only once.
+	 * 
+	 * @param indents
+	 *            the cached indentations, indexed by depth
+	 * @param depth
+	 *            the depth of the level
+	 * @return the indentation
 	 */
-	private static String generateWhitespaces(int n) {
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < n; i++) {
-			sb.append(" ");
+	private static String indent(List<String> indents, int depth) {
+		while (indents.size() <= depth) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0, n = indents.size() * INDENT; i < n; i++) {
+				sb.append(' ');
+			}
+			indents.add(sb.toString());
 		}
-		return sb.toString();
+		return indents.get(depth);
 	}
 
+	/**
+	 * A directory on the stack of the tree walk, together with its children
+	 * and the index of the next child to be printed.
+	 * 
+	 * @author 0036502252
+	 *
+	 */
+	static class Level {
+		/**
+		 * The depth of the directory's children.
+		 */
+		final int depth;
+		/**
+		 * The children of the directory.
+		 */
+		final List<Path> children = new ArrayList<>();
+		/**
+		 * Indicates which of the children are directories.
+		 */
+		final List<Boolean> directories = new ArrayList<>();
+		/**
+		 * The index of the next child to be printed.
+		 */
+		int index;
+
+		/**
+		 * Constructs a new {@link Level} by listing the directory.
+		 * 
+		 * @param dir
+		 *            the directory
+		 * @param depth
+		 *            the depth of the directory's children
+		 * @param env
+		 *            the environment used for reporting errors
+		 */
+		Level(Path dir, int depth, Environment env) {
+			this.depth = depth;
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path child : stream) {
+					children.add(child);
+					directories.add(Files.isDirectory(child,
+							LinkOption.NOFOLLOW_LINKS));
+				}
+			} catch (IOException ex) {
+				env.writeln("Could not list " + dir + ": " + ex.getMessage());
+			}
+		}
+	}
 }
@@ -0,0 +1,407 @@
+package hr.fer.zemris.java.hw07.shell.namebuilder;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+
+/**
+ * A name expression compiled into a flat array of instructions, produced by
+ * {@link NameBuilderParser}. Each instruction either appends a literal segment
+ * of the expression, or a value: a group of the regular expression, a
+ * counter, or an attribute or the digest of the renamed file. A value may be
+ * cut to a substring, converted to upper or lower case, and padded to its
+ * minimum width, in that order.
+ * <p>
+ * All of the literals are kept in a single array, and the padding is
+ * appended from arrays prepared while compiling, so building a name from
+ * groups and counters appends to the {@link StringBuilder} of the
+ * {@link NameBuilderInfo} without allocating anything. The attributes and the
+ * digest of a file are requested from the {@link NameBuilderInfo} only by the
+ * instructions which use them; see {@link #usesFileData()}.
+ * <p>
+ * Once compiled, the builder is immutable and can be shared between threads.
+ *
+ * @author 0036502252
+ *
+ */
+public class CompiledNameBuilder implements NameBuilder {
+	/**
+	 * The largest minimum width of a value; file names are never longer.
+	 */
+	public static final int MAX_WIDTH = 255;
+
+	/**
+	 * Appends the literal given by the offset and the length in
+	 * {@link #literals}.
+	 */
+	private static final int LITERAL = 0;
+	/**
+	 * Appends the group given by the operand.
+	 */
+	static final int GROUP = 1;
+	/**
+	 * Appends the counter whose start and step are given by the operand.
+	 */
+	static final int COUNTER = 2;
+	/**
+	 * Appends the size of the file in bytes.
+	 */
+	static final int SIZE = 3;
+	/**
+	 * Appends the last modification time of the file, formatted by the
+	 * formatter given by the operand.
+	 */
+	static final int MTIME = 4;
+	/**
+	 * Appends the hex-encoded SHA-256 digest of the file.
+	 */
+	static final int SHA256 = 5;
+
+	/**
+	 * The flag padding a value with zeros instead of spaces.
+	 */
+	static final int ZERO_PADDED = 1;
+	/**
+	 * The flag converting a value to upper case.
+	 */
+	static final int UPPER = 2;
+	/**
+	 * The flag converting a value to lower case.
+	 */
+	static final int LOWER = 4;
+
+	/**
+	 * The number of ints making up a single instruction: the operation, its
+	 * operand, the minimum width, the flags, and the start and the end of the
+	 * substring (-1 for the end of the value).
+	 */
+	private static final int FIELDS = 6;
+	/**
+	 * The digits used in hexadecimal number representation.
+	 */
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The instructions.
+	 */
+	private int[] code = new int[8 * FIELDS];
+	/**
+	 * The length of the used part of {@link #code}.
+	 */
+	private int length;
+	/**
+	 * All of the literals, one after another.
+	 */
+	private char[] literals = new char[16];
+	/**
+	 * The length of the used part of {@link #literals}.
+	 */
+	private int literalsLength;
+	/**
+	 * Zeros used for padding, as many as the largest zero-padded width.
+	 */
+	private char[] zeros = new char[0];
+	/**
+	 * Spaces used for padding, as many as the largest space-padded width.
+	 */
+	private char[] spaces = new char[0];
+	/**
+	 * The start and the step of every counter, one after another.
+	 */
+	private long[] counters = new long[0];
+	/**
+	 * The formatters of the modification times.
+	 */
+	private DateTimeFormatter[] formatters = new DateTimeFormatter[0];
+	/**
+	 * The largest group index used by the expression, or -1 if it uses none.
+	 */
+	private int maxGroup = -1;
+	/**
+	 * True if the expression uses counters.
+	 */
+	private boolean usesCounters;
+	/**
+	 * True if the expression uses the attributes or the digest of a file.
+	 */
+	private boolean usesFileData;
+
+	/**
+	 * Constructs a new, empty {@link CompiledNameBuilder}, which is filled by
+	 * the parser.
+	 */
+	CompiledNameBuilder() {
+	}
+
+	/**
+	 * Adds an instruction appending a literal. Adjacent literals are merged
+	 * into a single instruction.
+	 *
+	 * @param data
+	 *            the characters holding the literal
+	 * @param start
+	 *            the index of the literal's first character
+	 * @param end
+	 *            the index after the literal's last character
+	 */
+	void addLiteral(char[] data, int start, int end) {
+		int n = end - start;
+		if (n == 0) {
+			return;
+		}
+
+		if (literalsLength + n > literals.length) {
+			literals = Arrays.copyOf(literals,
+					Math.max(literalsLength + n, literals.length * 2));
+		}
+		System.arraycopy(data, start, literals, literalsLength, n);
+
+		if (length > 0 && code[length - FIELDS] == LITERAL) {
+			code[length - FIELDS + 2] += n;
+		} else {
+			addInstruction(LITERAL, literalsLength, n, 0, 0, -1);
+		}
+		literalsLength += n;
+	}
+
+	/**
+	 * Adds a counter.
+	 *
+	 * @param start
+	 *            the value of the counter for the first file
+	 * @param step
+	 *            the difference of the values for two consecutive files
+	 * @return the operand of the instruction appending the counter
+	 */
+	int addCounter(long start, long step) {
+		int operand = counters.length / 2;
+		counters = Arrays.copyOf(counters, counters.length + 2);
+		counters[2 * operand] = start;
+		counters[2 * operand + 1] = step;
+		return operand;
+	}
+
+	/**
+	 * Adds a formatter of modification times.
+	 *
+	 * @param formatter
+	 *            the formatter, which must have a zone
+	 * @return the operand of the instruction appending the formatted time
+	 */
+	int addFormatter(DateTimeFormatter formatter) {
+		formatters = Arrays.copyOf(formatters, formatters.length + 1);
+		formatters[formatters.length - 1] = formatter;
+		return formatters.length - 1;
+	}
+
+	/**
+	 * Adds an instruction appending a value.
+	 *
+	 * @param operation
+	 *            the kind of the value, such as {@link #GROUP}
+	 * @param operand
+	 *            the index of the group, counter or formatter
+	 * @param flags
+	 *            the padding and case flags, such as {@link #ZERO_PADDED}
+	 * @param width
+	 *            the minimum width of the value
+	 * @param subStart
+	 *            the index of the first character of the value which is kept
+	 * @param subEnd
+	 *            the index after the last character of the value which is
+	 *            kept, or -1 to keep the rest of the value
+	 * @throws IllegalArgumentException
+	 *             if the operand is negative or the width is larger than
+	 *             {@value #MAX_WIDTH}, which the parser reports beforehand
+	 */
+	void addValue(int operation, int operand, int flags, int width,
+			int subStart, int subEnd) {
+		if (operand < 0 || width < 0 || width > MAX_WIDTH) {
+			throw new IllegalArgumentException(
+					"Invalid operand " + operand + " of width " + width);
+		}
+
+		if ((flags & ZERO_PADDED) != 0 && width > zeros.length) {
+			zeros = new char[width];
+			Arrays.fill(zeros, '0');
+		} else if ((flags & ZERO_PADDED) == 0 && width > spaces.length) {
+			spaces = new char[width];
+			Arrays.fill(spaces, ' ');
+		}
+
+		if (operation == GROUP) {
+			maxGroup = Math.max(maxGroup, operand);
+		} else if (operation == COUNTER) {
+			usesCounters = true;
+		} else {
+			usesFileData = true;
+		}
+		addInstruction(operation, operand, width, flags, subStart, subEnd);
+	}
+
+	/**
+	 * @return the largest group index used by the expression, or -1 if it uses
+	 *         no groups
+	 */
+	public int getMaxGroup() {
+		return maxGroup;
+	}
+
+	/**
+	 * @return true if the expression uses counters, which need
+	 *         {@link NameBuilderInfo#getIndex()}
+	 */
+	public boolean usesCounters() {
+		return usesCounters;
+	}
+
+	/**
+	 * @return true if the expression uses the size, the modification time or
+	 *         the digest of a file, which are expensive to get
+	 */
+	public boolean usesFileData() {
+		return usesFileData;
+	}
+
+	@Override
+	public void execute(NameBuilderInfo info) {
+		StringBuilder sb = info.getStringBuilder();
+		for (int i = 0; i < length; i += FIELDS) {
+			int operation = code[i];
+			int operand = code[i + 1];
+			if (operation == LITERAL) {
+				sb.append(literals, operand, code[i + 2]);
+				continue;
+			}
+
+			int width = code[i + 2];
+			int flags = code[i + 3];
+			char[] padding = (flags & ZERO_PADDED) != 0 ? zeros : spaces;
+			if (operation == GROUP && (flags & ~ZERO_PADDED) == 0
+					&& code[i + 4] == 0 && code[i + 5] < 0) {
+				// a plain group, padded before it is appended
+				int n = width - info.getGroupLength(operand);
+				if (n > 0) {
+					sb.append(padding, 0, n);
+				}
+				info.appendGroup(operand);
+				continue;
+			}
+
+			int start = sb.length();
+			appendValue(info, sb, operation, operand);
+			substring(sb, start, code[i + 4], code[i + 5]);
+			if ((flags & (UPPER | LOWER)) != 0) {
+				boolean upper = (flags & UPPER) != 0;
+				for (int j = start, end = sb.length(); j < end; j++) {
+					char c = sb.charAt(j);
+					sb.setCharAt(j, upper ? Character.toUpperCase(c)
+							: Character.toLowerCase(c));
+				}
+			}
+
+			int n = width - (sb.length() - start);
+			if (n > 0) {
+				// the zeros of a negative counter go after its sign
+				if (operation == COUNTER && padding == zeros
+						&& sb.length() > start && sb.charAt(start) == '-') {
+					start++;
+				}
+				sb.insert(start, padding, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Appends a value.
+	 *
+	 * @param info
+	 *            the information about the renamed file
+	 * @param sb
+	 *            the builder of the new name
+	 * @param operation
+	 *            the kind of the value
+	 * @param operand
+	 *            the index of the group, counter or formatter
+	 */
+	private void appendValue(NameBuilderInfo info, StringBuilder sb,
+			int operation, int operand) {
+		switch (operation) {
+		case GROUP:
+			info.appendGroup(operand);
+			break;
+		case COUNTER:
+			sb.append(counters[2 * operand]
+					+ counters[2 * operand + 1] * info.getIndex());
+			break;
+		case SIZE:
+			sb.append(info.getAttributes().size());
+			break;
+		case MTIME:
+			formatters[operand].formatTo(
+					info.getAttributes().lastModifiedTime().toInstant(), sb);
+			break;
+		case SHA256:
+			for (byte b : info.getSha256()) {
+				sb.append(DIGITS[(b >> 4) & 0xf]).append(DIGITS[b & 0xf]);
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unknown operation: " + operation);
+		}
+	}
+
+	/**
+	 * Cuts the value at the end of the builder to a substring. The bounds are
+	 * clamped to the length of the value.
+	 *
+	 * @param sb
+	 *            the builder of the new name
+	 * @param start
+	 *            the index at which the value starts in the builder
+	 * @param subStart
+	 *            the index of the first character of the value which is kept
+	 * @param subEnd
+	 *            the index after the last character of the value which is
+	 *            kept, or -1 to keep the rest of the value
+	 */
+	private static void substring(StringBuilder sb, int start, int subStart,
+			int subEnd) {
+		int valueLength = sb.length() - start;
+		if (subEnd >= 0 && subEnd < valueLength) {
+			sb.setLength(start + subEnd);
+		}
+		if (subStart > 0) {
+			sb.delete(start, start + Math.min(subStart, valueLength));
+		}
+	}
+
+	/**
+	 * Adds an instruction.
+	 *
+	 * @param operation
+	 *            the operation
+	 * @param operand
+	 *            the operand
+	 * @param width
+	 *            the minimum width, or the length of a literal
+	 * @param flags
+	 *            the flags
+	 * @param subStart
+	 *            the start of the substring
+	 * @param subEnd
+	 *            the end of the substring, or -1
+	 */
+	private void addInstruction(int operation, int operand, int width,
+			int flags, int subStart, int subEnd) {
+		if (length + FIELDS > code.length) {
+			code = Arrays.copyOf(code, code.length * 2);
+		}
+		code[length++] = operation;
+		code[length++] = operand;
+		code[length++] = width;
+		code[length++] = flags;
+		code[length++] = subStart;
+		code[length++] = subEnd;
+	}
+}
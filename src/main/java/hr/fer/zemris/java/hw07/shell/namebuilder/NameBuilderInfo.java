@@ -1,10 +1,15 @@
 package hr.fer.zemris.java.hw07.shell.namebuilder;
 
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.regex.Matcher;
 
 /**
  * Creates a new filename using a grouping mechanism (usually from the 
  * {@link Matcher} class) and a {@link StringBuilder}.
+ * <p>
+ * The information about the renamed file itself (its position among the
+ * renamed files, its attributes and its digest) is only requested by the
+ * expressions which use it, so an implementation should compute it lazily.
  * @author 0036502252
  *
  */
@@ -20,4 +25,58 @@ public interface NameBuilderInfo {
 	 */
 	String getGroup(int index);
 
+	/**
+	 * Gets the length of a group without creating its substring. The default
+	 * implementation uses {@link #getGroup(int)}.
+	 *
+	 * @param index
+	 *            the index of the group
+	 * @return the length of the group, or 0 if the group did not match
+	 */
+	default int getGroupLength(int index) {
+		String group = getGroup(index);
+		return group == null ? 0 : group.length();
+	}
+
+	/**
+	 * Appends a group to the {@link StringBuilder} without creating its
+	 * substring. The default implementation uses {@link #getGroup(int)}.
+	 *
+	 * @param index
+	 *            the index of the group
+	 */
+	default void appendGroup(int index) {
+		String group = getGroup(index);
+		if (group != null) {
+			getStringBuilder().append(group);
+		}
+	}
+
+	/**
+	 * Gets the position of the renamed file among all of the renamed files,
+	 * used by counters.
+	 *
+	 * @return the position of the file, starting from 0
+	 */
+	long getIndex();
+
+	/**
+	 * Gets the attributes of the renamed file, used by the size and
+	 * modification time placeholders.
+	 *
+	 * @return the attributes of the file
+	 * @throws java.io.UncheckedIOException
+	 *             if the attributes can not be read
+	 */
+	BasicFileAttributes getAttributes();
+
+	/**
+	 * Gets the SHA-256 digest of the contents of the renamed file.
+	 *
+	 * @return the digest of the file
+	 * @throws java.io.UncheckedIOException
+	 *             if the file can not be read
+	 */
+	byte[] getSha256();
+
 }
@@ -1,18 +1,72 @@
 package hr.fer.zemris.java.hw07.shell.namebuilder;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import hr.fer.zemris.java.hw07.shell.ParserException;
 
 /**
  * Parses grouping tags in regular expressions, and generates
  * {@link NameBuilder} objects accordingly. Groupings tags start with '${', and
- * end with '}'. The parser works similarly to a lazy lexer.
- * 
+ * end with '}'. A tag holds the source of its value, optionally followed by a
+ * comma and the minimum width of the value; if the width starts with a zero,
+ * the value is padded with zeros, otherwise with spaces. The sources are:
+ * <ul>
+ * <li>the index of a group of the regular expression,</li>
+ * <li><code>#</code>, a counter, whose values follow the order of the old
+ * names, starting from 1,</li>
+ * <li><code>size</code>, the size of the file in bytes,</li>
+ * <li><code>mtime</code>, the last modification time of the file,</li>
+ * <li><code>sha256</code>, the hex-encoded SHA-256 digest of the file.</li>
+ * </ul>
+ * The width may be followed by modifiers, each starting with a colon:
+ * <code>upper</code> and <code>lower</code> convert the case of the value,
+ * <code>sub=A-B</code> keeps its characters from A (inclusive) to B
+ * (exclusive), and <code>sub=A</code> its characters from A on. A counter
+ * accepts <code>start=N</code> and <code>step=N</code>, and a modification
+ * time accepts <code>format=PATTERN</code>, a {@link DateTimeFormatter}
+ * pattern without colons. For example, <code>${#,04:start=0}</code> and
+ * <code>${sha256:sub=0-8}</code> are valid tags.
+ * <p>
+ * Whitespace is allowed around the parts of a tag, and kept as it is
+ * everywhere else.
+ * <p>
+ * The expression is scanned once, from left to right, and compiled into a
+ * {@link CompiledNameBuilder}. Errors are reported by a
+ * {@link ParserException} holding the position at which they were found.
+ * Recently compiled expressions are cached, see {@link #compile(String)}.
+ *
  * @author 0036502252
  */
 public class NameBuilderParser {
+	/**
+	 * The number of compiled expressions kept by {@link #compile(String)}.
+	 */
+	private static final int CACHE_SIZE = 64;
+	/**
+	 * The format of the modification times, if none is given.
+	 */
+	private static final String DEFAULT_TIME_FORMAT = "yyyyMMdd-HHmmss";
+	/**
+	 * The recently compiled expressions, the least recently used first.
+	 */
+	private static final Map<String, CompiledNameBuilder> CACHE =
+			new LinkedHashMap<String, CompiledNameBuilder>(CACHE_SIZE,
+					0.75f, true) {
+		/**
+		 * Auto-generated serial version UID.
+		 */
+		private static final long serialVersionUID = -2196713946587304236L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CompiledNameBuilder> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
 	/**
 	 * The input string converted to a char array.
 	 */
@@ -26,13 +80,14 @@ public class NameBuilderParser {
 	 */
 	private int end;
 	/**
-	 * The list of all generated {@link NameBuilder} objects.
+	 * The builder receiving the compiled instructions, or null if the
+	 * expression has not been parsed yet.
 	 */
-	private List<NameBuilder> builders;
+	private CompiledNameBuilder builder;
 
 	/**
 	 * Constructs a new {@link NameBuilderParser} which parses the given string.
-	 * 
+	 *
 	 * @param expression
 	 *            the regular expression to be parsed
 	 */
@@ -40,20 +95,52 @@ public class NameBuilderParser {
 		this.data = expression.toCharArray();
 		this.currentIndex = 0;
 		this.end = data.length;
-		this.builders = new ArrayList<>();
+	}
+
+	/**
+	 * Compiles an expression, reusing the builder of a recent compilation of
+	 * the same expression. Compiled builders are immutable, so they can be
+	 * shared freely.
+	 *
+	 * @param expression
+	 *            the expression to be compiled
+	 * @return the compiled expression
+	 * @throws ParserException
+	 *             if the expression is invalid
+	 */
+	public static CompiledNameBuilder compile(String expression) {
+		synchronized (CACHE) {
+			CompiledNameBuilder cached = CACHE.get(expression);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		CompiledNameBuilder compiled = new NameBuilderParser(expression)
+				.getNameBuilder();
+		synchronized (CACHE) {
+			CACHE.put(expression, compiled);
+		}
+		return compiled;
 	}
 
 	/**
 	 * Gets the NameBuilder representing the regex's groupings. This parser
-	 * namely returns an {@link AggregatingNameBuilder} object, which holds all
-	 * other NameBuilders.
-	 * 
+	 * namely returns a {@link CompiledNameBuilder} object, which holds the
+	 * instructions of the whole expression. The expression is parsed by the
+	 * first call only.
+	 *
 	 * @return the terminating NameBuilder object
+	 * @throws ParserException
+	 *             if the expression is invalid
 	 */
-	public NameBuilder getNameBuilder() {
-		parse();
-
-		return new AggregatingNameBuilder(builders);
+	public CompiledNameBuilder getNameBuilder() {
+		if (builder == null) {
+			CompiledNameBuilder compiled = new CompiledNameBuilder();
+			parse(compiled);
+			builder = compiled;
+		}
+		return builder;
 	}
 
 	// =========================================================================
@@ -61,104 +148,284 @@ public class NameBuilderParser {
 	// =========================================================================
 
 	/**
-	 * Skips whitespaces, and delegates functionality to different methods
-	 * according to current index of the parser.
+	 * Scans the whole expression, adding the literals between the tags and
+	 * the tags themselves to the builder.
+	 *
+	 * @param compiled
+	 *            the builder receiving the instructions
 	 */
-	private void parse() {
+	private void parse(CompiledNameBuilder compiled) {
+		int literalStart = 0;
 		while (currentIndex < end) {
-			if (Character.isWhitespace(data[currentIndex]))
-				currentIndex++;
-
-			if (isSubstitutionStart()) {
-				groupMethod();
+			if (data[currentIndex] == '$' && currentIndex + 1 < end
+					&& data[currentIndex + 1] == '{') {
+				compiled.addLiteral(data, literalStart, currentIndex);
+				groupMethod(compiled);
+				literalStart = currentIndex;
 			} else {
-				stringMethod();
+				currentIndex++;
 			}
-
 		}
+		compiled.addLiteral(data, literalStart, end);
 	}
 
 	/**
-	 * If there is no grouping substitution, simply generate a
-	 * {@link StringNameBuilder} object.
+	 * Parses a grouping tag starting at the current index, and adds it to the
+	 * builder.
+	 *
+	 * @param compiled
+	 *            the builder receiving the instructions
+	 * @throws ParserException
+	 *             if the tag is invalid
 	 */
-	private void stringMethod() {
-		StringBuilder sb = new StringBuilder();
+	private void groupMethod(CompiledNameBuilder compiled) {
+		int tagStart = currentIndex;
+		currentIndex += 2; // skip the ${ symbols
 
-		while (currentIndex < end && !isSubstitutionStart()) {
-			sb.append(data[currentIndex++]);
+		skipWhitespace(tagStart);
+		int sourceStart = currentIndex;
+		int operation;
+		int operand = 0;
+		if (Character.isDigit(data[currentIndex])) {
+			operation = CompiledNameBuilder.GROUP;
+			operand = number("group index");
+		} else if (data[currentIndex] == '#') {
+			operation = CompiledNameBuilder.COUNTER;
+			currentIndex++;
+		} else {
+			String source = identifier("group index or a placeholder");
+			switch (source) {
+			case "size":
+				operation = CompiledNameBuilder.SIZE;
+				break;
+			case "mtime":
+				operation = CompiledNameBuilder.MTIME;
+				break;
+			case "sha256":
+				operation = CompiledNameBuilder.SHA256;
+				break;
+			default:
+				throw new ParserException(
+						"Unknown placeholder '" + source + "'", sourceStart);
+			}
 		}
 
-		builders.add(new StringNameBuilder(sb.toString()));
-	}
-
-	/**
-	 * When inside a grouping substitution, generate a {@link GroupNameBuilder}
-	 * object according to the contents of the grouping substitution.
-	 * 
-	 * @throws NumberFormatException
-	 * @throws ParserException
-	 */
-	private void groupMethod() throws NumberFormatException, ParserException {
-		currentIndex += 2; // skip the ${ symbols
-		StringBuilder sb = new StringBuilder();
-		while (currentIndex < end && !isSubstitutionEnding()) {
-			if(Character.isWhitespace(data[currentIndex])) {
-				currentIndex++;
-				continue;
+		int flags = 0;
+		int width = 0;
+		skipWhitespace(tagStart);
+		if (data[currentIndex] == ',') {
+			currentIndex++;
+			skipWhitespace(tagStart);
+			int widthStart = currentIndex;
+			if (data[currentIndex] == '0') {
+				flags |= CompiledNameBuilder.ZERO_PADDED;
+			}
+			width = number("width");
+			if (width > CompiledNameBuilder.MAX_WIDTH) {
+				throw new ParserException("The width must be at most "
+						+ CompiledNameBuilder.MAX_WIDTH, widthStart);
 			}
-			sb.append(data[currentIndex++]);
+			skipWhitespace(tagStart);
 		}
-		String[] args = sb.toString().split(",");
-		currentIndex++; // skip the } symbol
-		
-		
-		
-		if (args.length == 1) {
-			int groupIndex = 0;
-			try {
-				groupIndex = Integer.parseInt(args[0].trim());
-
-			} catch (NumberFormatException ex) {
+
+		int subStart = 0;
+		int subEnd = -1;
+		long start = 1;
+		long step = 1;
+		String format = DEFAULT_TIME_FORMAT;
+		while (data[currentIndex] == ':') {
+			currentIndex++;
+			skipWhitespace(tagStart);
+			int modifierStart = currentIndex;
+			String modifier = identifier("modifier");
+			skipWhitespace(tagStart);
+
+			switch (modifier) {
+			case "upper":
+				flags = flags & ~CompiledNameBuilder.LOWER
+						| CompiledNameBuilder.UPPER;
+				break;
+			case "lower":
+				flags = flags & ~CompiledNameBuilder.UPPER
+						| CompiledNameBuilder.LOWER;
+				break;
+			case "sub":
+				expect('=', tagStart);
+				subStart = number("substring start");
+				subEnd = -1;
+				skipWhitespace(tagStart);
+				if (data[currentIndex] == '-') {
+					currentIndex++;
+					skipWhitespace(tagStart);
+					int endStart = currentIndex;
+					subEnd = number("substring end");
+					if (subEnd < subStart) {
+						throw new ParserException(
+								"The substring ends before it starts",
+								endStart);
+					}
+				}
+				break;
+			case "start":
+			case "step":
+				if (operation != CompiledNameBuilder.COUNTER) {
+					throw new ParserException("Only a counter accepts '"
+							+ modifier + "'", modifierStart);
+				}
+				expect('=', tagStart);
+				if (modifier.equals("start")) {
+					start = signedNumber(modifier);
+				} else {
+					step = signedNumber(modifier);
+				}
+				break;
+			case "format":
+				if (operation != CompiledNameBuilder.MTIME) {
+					throw new ParserException(
+							"Only a modification time accepts 'format'",
+							modifierStart);
+				}
+				expect('=', tagStart);
+				int formatStart = currentIndex;
+				while (data[currentIndex] != ':' && data[currentIndex] != '}') {
+					currentIndex++;
+					skipWhitespace(tagStart);
+				}
+				format = new String(data, formatStart,
+						currentIndex - formatStart).trim();
+				if (format.isEmpty()) {
+					throw new ParserException("Expected a time format",
+							formatStart);
+				}
+				try {
+					DateTimeFormatter.ofPattern(format);
+				} catch (IllegalArgumentException ex) {
+					throw new ParserException("Invalid time format '"
+							+ format + "'", formatStart);
+				}
+				break;
+			default:
 				throw new ParserException(
-						"Error while parsing ints: " + args[0], ex.getCause());
+						"Unknown modifier '" + modifier + "'", modifierStart);
 			}
+			skipWhitespace(tagStart);
+		}
 
-			builders.add(new GroupNameBuilder(groupIndex, false, 0));
+		if (data[currentIndex] != '}') {
+			throw new ParserException("Unexpected character '"
+					+ data[currentIndex] + "' in a grouping tag", currentIndex);
+		}
+		currentIndex++; // skip the } symbol
 
-		} else if (args.length == 2) {
-			int groupIndex;
-			int minSymbols;
+		if (operation == CompiledNameBuilder.COUNTER) {
+			operand = compiled.addCounter(start, step);
+		} else if (operation == CompiledNameBuilder.MTIME) {
+			operand = compiled.addFormatter(DateTimeFormatter.ofPattern(format)
+					.withZone(ZoneId.systemDefault()));
+		}
+		compiled.addValue(operation, operand, flags, width, subStart, subEnd);
+	}
 
-			try {
-				groupIndex = Integer.parseInt(args[0].trim());
-				minSymbols = Integer.parseInt(args[1].trim());
-			} catch (NumberFormatException ex) {
-				throw new ParserException(
-						"Error while parsing ints: " + args[0] + args[1],
-						ex.getCause());
-			}
-			builders.add(new GroupNameBuilder(groupIndex,
-					args[1].startsWith("0"), minSymbols));
-		} else {
-			throw new ParserException("Invalid number of arguments!");
+	/**
+	 * Reads a name starting with a letter, followed by letters and digits.
+	 *
+	 * @param what
+	 *            the meaning of the name, used in error messages
+	 * @return the name
+	 * @throws ParserException
+	 *             if there is no name at the current index
+	 */
+	private String identifier(String what) {
+		int start = currentIndex;
+		if (currentIndex == end || !Character.isLetter(data[currentIndex])) {
+			throw new ParserException("Expected a " + what, start);
+		}
+		while (currentIndex < end
+				&& Character.isLetterOrDigit(data[currentIndex])) {
+			currentIndex++;
+		}
+		return new String(data, start, currentIndex - start);
+	}
+
+	/**
+	 * Skips the given character, surrounded by whitespace.
+	 *
+	 * @param c
+	 *            the expected character
+	 * @param tagStart
+	 *            the index at which the tag starts
+	 * @throws ParserException
+	 *             if the character is not at the current index
+	 */
+	private void expect(char c, int tagStart) {
+		if (data[currentIndex] != c) {
+			throw new ParserException("Expected '" + c + "'", currentIndex);
 		}
+		currentIndex++;
+		skipWhitespace(tagStart);
+	}
 
+	/**
+	 * Reads a decimal number at the current index, which may be negative.
+	 *
+	 * @param what
+	 *            the meaning of the number, used in error messages
+	 * @return the number
+	 * @throws ParserException
+	 *             if there is no number at the current index, or if it is too
+	 *             large
+	 */
+	private long signedNumber(String what) {
+		if (currentIndex < end && data[currentIndex] == '-') {
+			currentIndex++;
+			return -number(what);
+		}
+		return number(what);
 	}
 
 	/**
-	 * @return true if the parser encounter the end of a group substitution
+	 * Reads a non-negative decimal number at the current index.
+	 *
+	 * @param what
+	 *            the meaning of the number, used in error messages
+	 * @return the number
+	 * @throws ParserException
+	 *             if there is no number at the current index, or if it is too
+	 *             large
 	 */
-	private boolean isSubstitutionEnding() {
-		String str = String.copyValueOf(data).substring(currentIndex);
-		return str.startsWith("}");
+	private int number(String what) {
+		int start = currentIndex;
+		long value = 0;
+		while (currentIndex < end && data[currentIndex] >= '0'
+				&& data[currentIndex] <= '9') {
+			value = value * 10 + (data[currentIndex++] - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw new ParserException("The " + what + " is too large",
+						start);
+			}
+		}
+
+		if (currentIndex == start) {
+			throw new ParserException("Expected the " + what, start);
+		}
+		return (int) value;
 	}
 
 	/**
-	 * @return true if the parser encounter the start of a group substitution
+	 * Skips the whitespace at the current index, inside a grouping tag.
+	 *
+	 * @param tagStart
+	 *            the index at which the tag starts
+	 * @throws ParserException
+	 *             if the expression ends before the tag is terminated
 	 */
-	private boolean isSubstitutionStart() {
-		String str = String.copyValueOf(data).substring(currentIndex);
-		return str.startsWith("${");
+	private void skipWhitespace(int tagStart) {
+		while (currentIndex < end
+				&& Character.isWhitespace(data[currentIndex])) {
+			currentIndex++;
+		}
+		if (currentIndex == end) {
+			throw new ParserException("Unterminated grouping tag", tagStart);
+		}
 	}
 }
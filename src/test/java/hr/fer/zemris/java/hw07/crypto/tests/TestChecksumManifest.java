@@ -0,0 +1,137 @@
+package hr.fer.zemris.java.hw07.crypto.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw07.crypto.ChecksumManifest;
+import hr.fer.zemris.java.hw07.crypto.Crypto;
+
+/**
+ * Testing class for the {@link ChecksumManifest} and the manifest operations
+ * of the {@link Crypto} program.
+ * @author 0036502252
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestChecksumManifest {
+
+	private static final String ABC_DIGEST = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String crypto(String... args) {
+		PrintStream original = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(output, true));
+			Crypto.main(args);
+		} finally {
+			System.setOut(original);
+		}
+		return new String(output.toByteArray());
+	}
+
+	private Path file(String name, String content) throws IOException {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.createDirectories(file.getParent());
+		return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void writtenManifestIsRead() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("a file with spaces");
+		ChecksumManifest manifest = new ChecksumManifest();
+		manifest.put(new ChecksumManifest.Entry(file, 3, 1234567890123L, ABC_DIGEST));
+		manifest.put(new ChecksumManifest.Entry(file.resolveSibling("b"), 0, 0, ABC_DIGEST));
+
+		Path manifestFile = folder.getRoot().toPath().resolve("manifest");
+		manifest.write(manifestFile);
+		Iterator<ChecksumManifest.Entry> entries = ChecksumManifest.read(manifestFile).entries().iterator();
+
+		ChecksumManifest.Entry entry = entries.next();
+		Assert.assertEquals(file, entry.path);
+		Assert.assertEquals(3, entry.size);
+		Assert.assertEquals(1234567890123L, entry.modified);
+		Assert.assertEquals(ABC_DIGEST, entry.digest);
+		Assert.assertEquals(file.resolveSibling("b"), entries.next().path);
+		Assert.assertFalse(entries.hasNext());
+		Assert.assertFalse(Files.exists(manifestFile.resolveSibling("manifest.tmp")));
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidManifestIsRejected() throws IOException {
+		ChecksumManifest.read(file("manifest", ChecksumManifest.HEADER + "\nabc 3 x file\n"));
+	}
+
+	@Test
+	public void unchangedFilesAreSkipped() throws IOException {
+		Path abc = file("dir/abc", "abc");
+		file("dir/sub/empty", "");
+		Path manifestFile = folder.getRoot().toPath().resolve("manifest");
+
+		String output = crypto("checksha", "--write-manifest", manifestFile.toString(), abc.getParent().toString());
+		Assert.assertTrue(output, output.contains("Wrote 2 entries"));
+		Assert.assertEquals(ABC_DIGEST, ChecksumManifest.read(manifestFile).get(abc).digest);
+
+		output = crypto("checksha", "--verify-manifest", manifestFile.toString());
+		Assert.assertTrue(output, output.contains("Verified 0 files, skipped 2 unchanged files, 0 failed, 0 missing."));
+
+		output = crypto("checksha", "--verify-manifest", manifestFile.toString(), "--full");
+		Assert.assertTrue(output, output.contains("Verified 2 files, skipped 0 unchanged files, 0 failed, 0 missing."));
+	}
+
+	@Test
+	public void changedAndMissingFilesFail() throws IOException {
+		Path abc = file("dir/abc", "abc");
+		Path grown = file("dir/grown", "abc");
+		Path missing = file("dir/missing", "abc");
+		String manifestFile = folder.getRoot().toPath().resolve("manifest").toString();
+		crypto("checksha", "--write-manifest", manifestFile, abc.getParent().toString());
+
+		file("dir/abc", "abd");
+		Files.setLastModifiedTime(abc, FileTime.fromMillis(Files.getLastModifiedTime(abc).toMillis() + 60_000));
+		file("dir/grown", "abcd");
+		Files.delete(missing);
+
+		String output = crypto("checksha", "--verify-manifest", manifestFile);
+		Assert.assertTrue(output, output.contains(abc + ": FAILED\n"));
+		Assert.assertTrue(output, output.contains(grown + ": FAILED (size changed)"));
+		Assert.assertTrue(output, output.contains(missing + ": MISSING"));
+		Assert.assertTrue(output, output.contains("Verified 0 files, skipped 0 unchanged files, 2 failed, 1 missing."));
+	}
+
+	@Test
+	public void touchedFileIsUpdated() throws IOException {
+		Path abc = file("dir/abc", "abc");
+		Path manifestFile = folder.getRoot().toPath().resolve("manifest");
+		crypto("checksha", "--write-manifest", manifestFile.toString(), abc.getParent().toString());
+
+		FileTime touched = FileTime.fromMillis(Files.getLastModifiedTime(abc).toMillis() + 60_000);
+		Files.setLastModifiedTime(abc, touched);
+
+		String output = crypto("checksha", "--verify-manifest", manifestFile.toString());
+		Assert.assertTrue(output, output.contains("Verified 1 files, skipped 0 unchanged files, 0 failed, 0 missing."));
+		Assert.assertTrue(ChecksumManifest.read(manifestFile).get(abc).matches(
+				Files.readAttributes(abc, BasicFileAttributes.class)));
+	}
+
+	@Test
+	public void unknownOptionIsRejected() throws IOException {
+		Path abc = file("dir/abc", "abc");
+		String output = crypto("checksha", "--ful", abc.getParent().toString());
+		Assert.assertTrue(output, output.contains("Unknown option: --ful"));
+	}
+}
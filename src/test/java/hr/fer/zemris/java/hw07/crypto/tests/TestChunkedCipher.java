@@ -0,0 +1,161 @@
+package hr.fer.zemris.java.hw07.crypto.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw07.crypto.ChunkedCipher;
+
+/**
+ * Testing class for the {@link ChunkedCipher}.
+ * @author 0036502252
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestChunkedCipher {
+
+	private static final int CHUNK = 16;
+	private static final byte[] KEY = new byte[16];
+	private static final byte[] IV = new byte[16];
+	static {
+		Arrays.fill(KEY, (byte) 7);
+		Arrays.fill(IV, (byte) 3);
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ChunkedCipher cipher = new ChunkedCipher(KEY, IV, 2);
+
+	private static byte[] content(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
+	private Path encrypt(byte[] content) throws IOException, GeneralSecurityException {
+		Path plain = folder.newFile().toPath();
+		Path container = folder.newFile().toPath();
+		Files.write(plain, content);
+		Assert.assertEquals(content.length, cipher.encrypt(plain, container, CHUNK));
+		Assert.assertEquals(ChunkedCipher.HEADER_SIZE + Math.max(1, (content.length + CHUNK - 1) / CHUNK)
+				* ChunkedCipher.TAG_SIZE + content.length, Files.size(container));
+		return container;
+	}
+
+	private byte[] decrypt(Path container, long offset, long length) throws IOException, GeneralSecurityException {
+		Path decrypted = folder.newFile().toPath();
+		long decryptedLength = cipher.decrypt(container, decrypted, offset, length);
+		byte[] bytes = Files.readAllBytes(decrypted);
+		Assert.assertEquals(decryptedLength, bytes.length);
+		return bytes;
+	}
+
+	private static void flip(Path container, long position) throws IOException {
+		try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, position);
+			buffer.put(0, (byte) (buffer.get(0) ^ 1)).rewind();
+			channel.write(buffer, position);
+		}
+	}
+
+	private void assertRoundTrip(int size) throws IOException, GeneralSecurityException {
+		byte[] content = content(size);
+		Path container = encrypt(content);
+		Assert.assertArrayEquals(content, decrypt(container, 0, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void emptyFile() throws IOException, GeneralSecurityException {
+		assertRoundTrip(0);
+	}
+
+	@Test
+	public void chunkSizeBoundaries() throws IOException, GeneralSecurityException {
+		assertRoundTrip(CHUNK - 1);
+		assertRoundTrip(CHUNK);
+		assertRoundTrip(CHUNK + 1);
+	}
+
+	@Test
+	public void manyChunks() throws IOException, GeneralSecurityException {
+		assertRoundTrip(10 * CHUNK + 5);
+	}
+
+	@Test
+	public void rangeIsDecrypted() throws IOException, GeneralSecurityException {
+		byte[] content = content(5 * CHUNK);
+		Path container = encrypt(content);
+		Assert.assertArrayEquals(Arrays.copyOfRange(content, 10, 40), decrypt(container, 10, 30));
+		Assert.assertArrayEquals(new byte[0], decrypt(container, 10, 0));
+	}
+
+	@Test
+	public void rangePastTheEndIsShortened() throws IOException, GeneralSecurityException {
+		byte[] content = content(5 * CHUNK + 3);
+		Path container = encrypt(content);
+		Assert.assertArrayEquals(Arrays.copyOfRange(content, 70, 83), decrypt(container, 70, 100));
+		Assert.assertArrayEquals(new byte[0], decrypt(container, 83, 10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rangeAfterTheEndIsRejected() throws IOException, GeneralSecurityException {
+		decrypt(encrypt(content(CHUNK)), CHUNK + 1, 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedContainerIsRejected() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(3 * CHUNK));
+		try (FileChannel channel = FileChannel.open(container, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - CHUNK - ChunkedCipher.TAG_SIZE);
+		}
+		decrypt(container, 0, CHUNK);
+	}
+
+	@Test(expected = GeneralSecurityException.class)
+	public void flippedCiphertextIsRejected() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(3 * CHUNK));
+		flip(container, ChunkedCipher.HEADER_SIZE + CHUNK + ChunkedCipher.TAG_SIZE + 5);
+		decrypt(container, 0, Long.MAX_VALUE);
+	}
+
+	@Test(expected = GeneralSecurityException.class)
+	public void flippedFinalChunkIsRejectedForAnEmptyRange() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(3 * CHUNK));
+		flip(container, Files.size(container) - 1);
+		decrypt(container, 0, 0);
+	}
+
+	@Test(expected = GeneralSecurityException.class)
+	public void flippedEmptyFileTagIsRejected() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(0));
+		flip(container, ChunkedCipher.HEADER_SIZE);
+		decrypt(container, 0, Long.MAX_VALUE);
+	}
+
+	@Test(expected = GeneralSecurityException.class)
+	public void flippedHeaderSaltIsRejected() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(3 * CHUNK));
+		flip(container, ChunkedCipher.HEADER_SIZE - 1);
+		decrypt(container, 0, CHUNK);
+	}
+
+	@Test(expected = IOException.class)
+	public void flippedHeaderMagicIsRejected() throws IOException, GeneralSecurityException {
+		Path container = encrypt(content(3 * CHUNK));
+		flip(container, 0);
+		decrypt(container, 0, CHUNK);
+	}
+}
@@ -3,9 +3,18 @@ package hr.fer.zemris.java.hw07.crypto.tests;
 import static hr.fer.zemris.java.hw07.crypto.Util.byteToHex;
 import static hr.fer.zemris.java.hw07.crypto.Util.hexToByte;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import hr.fer.zemris.java.hw07.crypto.HexDecoder;
+import hr.fer.zemris.java.hw07.crypto.HexEncoder;
 import hr.fer.zemris.java.hw07.crypto.Util;
 
 /**
@@ -62,4 +71,86 @@ public class TestUtil {
 		Assert.assertArrayEquals(arr, hexToByte(byteToHex(arr)));
 	}
 
+	@Test
+	public void encodeIntoArray() {
+		char[] chars = new char[8];
+		byte[] bytes = new byte[] { 0, 1, -82, 34, 5 };
+		int written = Util.encode(bytes, 1, 3, chars, 1);
+		Assert.assertEquals(6, written);
+		Assert.assertEquals("\u000001ae22\u0000", new String(chars));
+	}
+
+	@Test
+	public void decodeIntoArray() {
+		byte[] bytes = new byte[4];
+		int written = Util.decode("xx01AE22", 2, 8, bytes, 1);
+		Assert.assertEquals(3, written);
+		Assert.assertArrayEquals(new byte[] { 0, 1, -82, 34 }, bytes);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void decodeNonAsciiCharacter() {
+		Util.decode("0\u0161", 0, 2, new byte[1], 0);
+	}
+
+	@Test
+	public void encodeAndDecodeBuffers() {
+		byte[] arr = new byte[] { 1, 2, 2, 3, -1, -128, 127 };
+		for (boolean direct : new boolean[] { false, true }) {
+			ByteBuffer bytes = direct ? ByteBuffer.allocateDirect(arr.length)
+					: ByteBuffer.allocate(arr.length);
+			bytes.put(arr).flip();
+			CharBuffer chars = CharBuffer.allocate(20);
+			Util.encode(bytes, chars);
+			Assert.assertFalse(bytes.hasRemaining());
+			chars.flip();
+			Assert.assertEquals(byteToHex(arr), chars.toString());
+
+			bytes.clear();
+			Util.decode(chars, bytes);
+			Assert.assertFalse(chars.hasRemaining());
+			bytes.flip();
+			byte[] decoded = new byte[bytes.remaining()];
+			bytes.get(decoded);
+			Assert.assertArrayEquals(arr, decoded);
+		}
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void encodeIntoSmallBuffer() {
+		Util.encode(ByteBuffer.wrap(new byte[3]), CharBuffer.allocate(5));
+	}
+
+	@Test
+	public void streamingRoundTrip() throws IOException {
+		byte[] arr = new byte[1000];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = (byte) (i * 31);
+		}
+
+		StringWriter text = new StringWriter();
+		try (HexEncoder encoder = new HexEncoder(text, 7)) {
+			encoder.write(arr[0]);
+			encoder.write(arr, 1, arr.length - 1);
+		}
+		Assert.assertEquals(byteToHex(arr), text.toString());
+
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		String hex = text.toString();
+		try (HexDecoder decoder = new HexDecoder(decoded, 5)) {
+			// split the digits of single bytes across writes
+			for (int i = 0; i < hex.length(); i += 3) {
+				decoder.write(hex, i, Math.min(3, hex.length() - i));
+			}
+		}
+		Assert.assertArrayEquals(arr, decoded.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void streamingOddDigits() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HexDecoder decoder = new HexDecoder(out)) {
+			decoder.write("abc");
+		}
+	}
 }
@@ -0,0 +1,232 @@
+package hr.fer.zemris.java.hw07.shell.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw07.shell.Environment;
+import hr.fer.zemris.java.hw07.shell.commands.MassRenameShellCommand;
+import hr.fer.zemris.java.hw07.shell.commands.ShellCommand;
+
+/**
+ * Testing class for the {@link MassRenameShellCommand}.
+ * @author 0036502252
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestMassRenameShellCommand {
+
+	private static final String JOURNAL = ".massrename.journal";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class TestEnvironment implements Environment {
+		private StringBuilder output = new StringBuilder();
+		private Path current;
+
+		TestEnvironment(Path current) {
+			this.current = current;
+		}
+
+		@Override
+		public String readLine() {
+			return null;
+		}
+
+		@Override
+		public void write(String text) {
+			output.append(text);
+		}
+
+		@Override
+		public void writeln(String text) {
+			output.append(text).append('\n');
+		}
+
+		@Override
+		public void write(char[] cbuf, int offset, int length) {
+			output.append(cbuf, offset, length);
+		}
+
+		@Override
+		public void write(ByteBuffer bytes) {
+			output.append(StandardCharsets.UTF_8.decode(bytes));
+		}
+
+		@Override
+		public Charset getCharset() {
+			return StandardCharsets.UTF_8;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public SortedMap<String, ShellCommand> commands() {
+			return null;
+		}
+
+		@Override
+		public Character getMultilineSymbol() {
+			return '|';
+		}
+
+		@Override
+		public void setMultilineSymbol(Character symbol) {
+		}
+
+		@Override
+		public Character getPromptSymbol() {
+			return '>';
+		}
+
+		@Override
+		public void setPromptSymbol(Character symbol) {
+		}
+
+		@Override
+		public Character getMorelinesSymbol() {
+			return '\\';
+		}
+
+		@Override
+		public void setMorelinesSymbol(Character symbol) {
+		}
+
+		@Override
+		public Path getCurrentDirectory() {
+			return current;
+		}
+
+		@Override
+		public void setCurrentDirectory(Path path) {
+			current = path;
+		}
+
+		@Override
+		public Object getSharedData(String key) {
+			return null;
+		}
+
+		@Override
+		public void setSharedData(String key, Object value) {
+		}
+	}
+
+	private String massrename(String arguments) {
+		TestEnvironment env = new TestEnvironment(folder.getRoot().toPath());
+		new MassRenameShellCommand().executeCommand(env, arguments);
+		return env.output.toString();
+	}
+
+	private Path directory(String name, String... files) throws IOException {
+		Path dir = folder.getRoot().toPath().resolve(name);
+		Files.createDirectories(dir);
+		for (String file : files) {
+			Files.write(dir.resolve(file),
+					file.getBytes(StandardCharsets.UTF_8));
+		}
+		return dir;
+	}
+
+	private static Set<String> list(Path dir) throws IOException {
+		try (Stream<Path> stream = Files.list(dir)) {
+			return stream.map(p -> p.getFileName().toString())
+					.collect(Collectors.toSet());
+		}
+	}
+
+	private static Set<String> setOf(String... names) {
+		return new HashSet<>(Arrays.asList(names));
+	}
+
+	@Test
+	public void collisionsAreRejected() throws IOException {
+		Path src = directory("src", "a1.txt", "a2.txt");
+		String output = massrename("src dst execute a(\\d)\\.txt b.txt");
+
+		Assert.assertTrue(output,
+				output.contains("would both be renamed to b.txt"));
+		Assert.assertEquals(setOf("a1.txt", "a2.txt"), list(src));
+		Assert.assertFalse(Files.exists(src.resolveSibling("dst")));
+	}
+
+	@Test
+	public void existingTargetsAreRejected() throws IOException {
+		Path src = directory("src", "x1", "x2");
+		Path dst = directory("dst", "y2");
+		String output = massrename("src dst execute x(\\d) y${1}");
+
+		Assert.assertTrue(output, output.contains("x2: y2 already exists"));
+		Assert.assertEquals(setOf("x1", "x2"), list(src));
+		Assert.assertEquals(setOf("y2"), list(dst));
+	}
+
+	@Test
+	public void inPlaceRenamingSkipsTheJournal() throws IOException {
+		Path dir = directory("dir", "f1", "f2");
+		massrename("dir dir execute (.*) old-${1}");
+		Assert.assertEquals(setOf("old-f1", "old-f2", JOURNAL), list(dir));
+
+		String output = massrename("dir dir execute (.*) new-${1}");
+		Assert.assertTrue(output, output.contains("Renamed 2 files"));
+		Assert.assertEquals(setOf("new-old-f1", "new-old-f2", JOURNAL),
+				list(dir));
+
+		massrename("dir dir undo");
+		Assert.assertEquals(setOf("old-f1", "old-f2"), list(dir));
+	}
+
+	@Test
+	public void failedMoveIsRolledBack() throws IOException {
+		// the name of the last file grows past the file name limit
+		char[] longName = new char[100];
+		Arrays.fill(longName, 'b');
+		Path src = directory("src", "a", "aa", "aaa", new String(longName));
+		Path dst = directory("dst");
+
+		String output = massrename(
+				"-j 1 src dst execute (a*)(.*) ${1,0200}${2}");
+
+		Assert.assertTrue(output, output.contains("reverting the renaming"));
+		Assert.assertEquals(setOf("a", "aa", "aaa", new String(longName)),
+				list(src));
+		Assert.assertEquals(setOf(), list(dst));
+	}
+
+	@Test
+	public void undoUsesTheJournal() throws IOException {
+		Path src = directory("src", "slika1-zagreb.jpg", "slika2-split.jpg");
+		Path dst = directory("dst");
+		massrename("src dst execute slika(\\d+)-(.+)\\.jpg ${2}-${1,03}.jpg");
+		Assert.assertEquals(setOf(), list(src));
+		Assert.assertEquals(
+				setOf("zagreb-001.jpg", "split-002.jpg", JOURNAL), list(dst));
+
+		String output = massrename("src dst undo");
+		Assert.assertTrue(output, output.contains("Restored 2 files"));
+		Assert.assertEquals(setOf("slika1-zagreb.jpg", "slika2-split.jpg"),
+				list(src));
+		Assert.assertEquals(setOf(), list(dst));
+
+		output = massrename("src dst undo");
+		Assert.assertTrue(output,
+				output.contains("There is no renaming to undo"));
+	}
+}
@@ -0,0 +1,134 @@
+package hr.fer.zemris.java.hw07.shell.tests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw07.shell.ParserException;
+import hr.fer.zemris.java.hw07.shell.commands.MassRenameShellCommand;
+import hr.fer.zemris.java.hw07.shell.namebuilder.NameBuilderParser;
+
+/**
+ * Testing class for the {@link NameBuilderParser}.
+ * @author 0036502252
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestNameBuilderParser {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String build(String expression, String regex, String name)
+			throws IOException {
+		return build(expression, regex, name, 0);
+	}
+
+	private String build(String expression, String regex, String name,
+			long index) throws IOException {
+		Matcher matcher = Pattern.compile(regex).matcher(name);
+		Assert.assertTrue(matcher.matches());
+		Path directory = folder.getRoot().toPath();
+		Path file = directory.resolve(name);
+		if (!Files.exists(file)) {
+			Files.write(file, name.getBytes(StandardCharsets.UTF_8));
+		}
+
+		MassRenameShellCommand.BuilderInfoImpl info =
+				new MassRenameShellCommand.BuilderInfoImpl(directory);
+		new NameBuilderParser(expression).getNameBuilder()
+				.execute(info.reset(name, matcher, index));
+		return info.getStringBuilder().toString();
+	}
+
+	private static int errorPosition(String expression) {
+		try {
+			new NameBuilderParser(expression).getNameBuilder();
+		} catch (ParserException ex) {
+			return ex.getPosition();
+		}
+		Assert.fail("Expected a ParserException for: " + expression);
+		return -1;
+	}
+
+	@Test
+	public void groupsAndPadding() throws IOException {
+		String regex = "slika(\\d+)-(.+)\\.jpg";
+		Assert.assertEquals("gradovi-zagreb-001.jpg",
+				build("gradovi-${2}-${1,03}.jpg", regex, "slika1-zagreb.jpg"));
+		Assert.assertEquals("[  12]",
+				build("[${ 1 , 4 }]", regex, "slika12-a.jpg"));
+		Assert.assertEquals("12345",
+				build("${1,03}", regex, "slika12345-a.jpg"));
+	}
+
+	@Test
+	public void literalsAreKept() throws IOException {
+		String regex = "(\\w+) (\\w+)";
+		Assert.assertEquals("b a", build("${2} ${1}", regex, "a b"));
+		Assert.assertEquals(" $ } {x} ", build(" $ } {x} ", regex, "a b"));
+		Assert.assertEquals("", build("", regex, "a b"));
+	}
+
+	@Test
+	public void errorPositions() {
+		Assert.assertEquals(2, errorPosition("ab${"));
+		Assert.assertEquals(2, errorPosition("ab${1,3"));
+		Assert.assertEquals(4, errorPosition("a${ x}"));
+		Assert.assertEquals(5, errorPosition("a${1 2}"));
+		Assert.assertEquals(5, errorPosition("a${1,}"));
+		Assert.assertEquals(4, errorPosition("${1,256}"));
+		Assert.assertEquals(2, errorPosition("${99999999999}"));
+	}
+
+	@Test
+	public void countersAndModifiers() throws IOException {
+		String regex = "(\\w+)-(\\w+)";
+		Assert.assertEquals("001", build("${#,03}", regex, "a-b", 0));
+		Assert.assertEquals("0025",
+				build("${#,04:start=5:step=10}", regex, "a-b", 2));
+		Assert.assertEquals("-1",
+				build("${#:step=-2:start=3}", regex, "a-b", 2));
+		Assert.assertEquals("-005", build("${#,04:start=-5}", regex, "a-b", 0));
+		Assert.assertEquals("  -5", build("${#,4:start=-5}", regex, "a-b", 0));
+		Assert.assertEquals("ZAG-split",
+				build("${1:upper:sub=0-3}-${2:lower}", regex, "Zagreb-SPLIT"));
+		Assert.assertEquals("  eb|reb",
+				build("${1,4:sub=4-10}|${1:sub=3}", regex, "zagreb-x"));
+	}
+
+	@Test
+	public void filePlaceholders() throws IOException {
+		String regex = "(\\w+)";
+		Assert.assertEquals("abc-3", build("${1}-${size}", regex, "abc"));
+		Assert.assertEquals("ba7816bf",
+				build("${sha256:sub=0-8}", regex, "abc"));
+		Assert.assertEquals("BA7816BF",
+				build("${sha256:upper:sub=0-8}", regex, "abc"));
+	}
+
+	@Test
+	public void invalidModifiers() {
+		Assert.assertEquals(4, errorPosition("${1:start=2}"));
+		Assert.assertEquals(4, errorPosition("${1:bold}"));
+		Assert.assertEquals(10, errorPosition("${1:sub=3-2}"));
+		Assert.assertEquals(2, errorPosition("${md5}"));
+		Assert.assertEquals(15, errorPosition("${mtime:format=bbb}"));
+		Assert.assertEquals(15, errorPosition("${mtime:format=}"));
+		Assert.assertEquals(17, errorPosition("${mtime:format=  :upper}"));
+	}
+
+	@Test
+	public void compileIsCached() {
+		Assert.assertSame(NameBuilderParser.compile("x-${1}"),
+				NameBuilderParser.compile("x-${1}"));
+	}
+}
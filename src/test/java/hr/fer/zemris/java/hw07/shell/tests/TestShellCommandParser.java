@@ -0,0 +1,80 @@
+package hr.fer.zemris.java.hw07.shell.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw07.shell.ParserException;
+import hr.fer.zemris.java.hw07.shell.ShellCommandParser;
+
+/**
+ * Testing class for the {@link ShellCommandParser}.
+ * @author 0036502252
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestShellCommandParser {
+
+	private static String[] parse(String line) {
+		return new ShellCommandParser(line).parsePath();
+	}
+
+	@Test
+	public void emptyInput() {
+		Assert.assertNull(parse(""));
+		Assert.assertNull(parse(" \t "));
+	}
+
+	@Test
+	public void unquotedTokens() {
+		Assert.assertArrayEquals(new String[] { "a", "b", "c" },
+				parse("  a   b\tc  "));
+	}
+
+	@Test
+	public void quotedTokens() {
+		Assert.assertArrayEquals(
+				new String[] { "C:/Program Files/Program1/info.txt", "dest" },
+				parse("\"C:/Program Files/Program1/info.txt\" dest"));
+		Assert.assertArrayEquals(new String[] { " padded ", "" },
+				parse("\" padded \" \"\""));
+	}
+
+	@Test
+	public void escapes() {
+		Assert.assertArrayEquals(
+				new String[] { "a \"b\" \\c", "C:\\dir\\file" },
+				parse("\"a \\\"b\\\" \\\\c\" C:\\dir\\file"));
+		Assert.assertArrayEquals(new String[] { "two words", "a\"b" },
+				parse("two\\ words a\\\"b"));
+	}
+
+	@Test(expected = ParserException.class)
+	public void unterminatedQuote() {
+		parse("\"abc");
+	}
+
+	@Test(expected = ParserException.class)
+	public void textAfterQuote() {
+		parse("\"C:\\fi le\".txt");
+	}
+
+	@Test
+	public void reuseAndBounds() {
+		ShellCommandParser parser = new ShellCommandParser();
+		Assert.assertEquals(2, parser.reset("first \"second arg\"").tokenize());
+		Assert.assertEquals(6, parser.getTokenStart(1));
+		Assert.assertEquals(18, parser.getTokenEnd(1));
+		Assert.assertEquals("second arg", parser.getToken(1).toString());
+
+		Assert.assertEquals(1, parser.reset("  x").tokenize());
+		Assert.assertEquals(2, parser.getTokenStart(0));
+		Assert.assertEquals("x", parser.getToken(0).toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void invalidTokenIndex() {
+		ShellCommandParser parser = new ShellCommandParser("a");
+		parser.tokenize();
+		parser.getToken(1);
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Tests for the classes of the shell in the 7th Java Course homework.
+ */
+/**
+ * @author 0036502252
+ *
+ */
+package hr.fer.zemris.java.hw07.shell.tests;